@@ -0,0 +1,300 @@
+/*******************************************************************************
+ * PSHDL is a library and (trans-)compiler for PSHDL input. It generates
+ *     output suitable for implementation or simulation of it.
+ *
+ *     Copyright (C) 2014 Karsten Becker (feedback (at) pshdl (dot) org)
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     This License does not grant permission to use the trade names, trademarks,
+ *     service marks, or product names of the Licensor, except as required for
+ *     reasonable and customary use in describing the origin of the Work.
+ *
+ * Contributors:
+ *     Karsten Becker - initial API and implementation
+ ******************************************************************************/
+package de.upb.hni.vmagic.parser;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.runtime.CharStream;
+
+/**
+ * A {@link CharStream} that reads directly from a {@link ByteBuffer}, usually
+ * a memory mapped file. Unlike the {@code CaseInsensitiveInputStream}, the
+ * contents are not copied into a char array. UTF-8 sequences are decoded on
+ * the fly, bytes that are not part of a valid sequence are interpreted as
+ * ISO-8859-1. The lookahead is folded to lower case, so the lexer sees the
+ * same characters as with the case insensitive stream.
+ * <p>
+ * Indices of this stream are byte offsets into the buffer, so positions are
+ * only equal to character positions for ASCII files. Use
+ * {@link #characterIndex(int)} to convert them. Lines and positions in a line
+ * are counted in characters.
+ *
+ * @author Karsten Becker
+ *
+ */
+public class ByteBufferCharStream implements CharStream {
+
+	private static final int REPLACEMENT_CHAR = 0xFFFD;
+
+	private final ByteBuffer buffer;
+	private final int n;
+	private final String sourceName;
+
+	private int p = 0;
+	private int line = 1;
+	private int charPositionInLine = 0;
+
+	private List<MarkState> markers;
+	private int markDepth = 0;
+	private int lastMarker;
+
+	private static final class MarkState {
+		int p;
+		int line;
+		int charPositionInLine;
+	}
+
+	/**
+	 * Creates a new stream for the remaining bytes of the buffer. The position
+	 * of the buffer is not modified.
+	 *
+	 * @param buffer
+	 *            the contents of the file
+	 * @param sourceName
+	 *            the name of the file, may be <code>null</code>
+	 */
+	public ByteBufferCharStream(ByteBuffer buffer, String sourceName) {
+		this.buffer = buffer.slice();
+		this.n = this.buffer.limit();
+		this.sourceName = sourceName;
+	}
+
+	@Override
+	public void consume() {
+		if (p < n) {
+			charPositionInLine++;
+			if (buffer.get(p) == '\n') {
+				line++;
+				charPositionInLine = 0;
+			}
+			p += lengthAt(p);
+		}
+	}
+
+	@Override
+	public int LA(int i) {
+		if (i == 0)
+			return 0;
+		int offset = p;
+		if (i < 0) {
+			for (; i < 0; i++) {
+				if (offset <= 0)
+					return CharStream.EOF;
+				offset = previous(offset);
+			}
+		} else {
+			for (; i > 1; i--) {
+				if (offset >= n)
+					return CharStream.EOF;
+				offset += lengthAt(offset);
+			}
+		}
+		if (offset >= n)
+			return CharStream.EOF;
+		final int b = buffer.get(offset);
+		if (b >= 0)
+			return Character.toLowerCase(b);
+		final int c = codePointAt(offset);
+		if (c > Character.MAX_VALUE)
+			return REPLACEMENT_CHAR;
+		return Character.toLowerCase(c);
+	}
+
+	@Override
+	public int LT(int i) {
+		return LA(i);
+	}
+
+	@Override
+	public String substring(int start, int stop) {
+		final StringBuilder sb = new StringBuilder();
+		int offset = start;
+		while ((offset <= stop) && (offset < n)) {
+			sb.appendCodePoint(codePointAt(offset));
+			offset += lengthAt(offset);
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public int mark() {
+		if (markers == null) {
+			markers = new ArrayList<>();
+			markers.add(null);
+		}
+		markDepth++;
+		MarkState state;
+		if (markDepth >= markers.size()) {
+			state = new MarkState();
+			markers.add(state);
+		} else {
+			state = markers.get(markDepth);
+		}
+		state.p = p;
+		state.line = line;
+		state.charPositionInLine = charPositionInLine;
+		lastMarker = markDepth;
+		return markDepth;
+	}
+
+	@Override
+	public void rewind(int marker) {
+		final MarkState state = markers.get(marker);
+		seek(state.p);
+		line = state.line;
+		charPositionInLine = state.charPositionInLine;
+		release(marker);
+	}
+
+	@Override
+	public void rewind() {
+		rewind(lastMarker);
+	}
+
+	@Override
+	public void release(int marker) {
+		markDepth = marker - 1;
+	}
+
+	@Override
+	public void seek(int index) {
+		if (index <= p) {
+			p = index;
+			return;
+		}
+		while (p < index) {
+			consume();
+		}
+	}
+
+	@Override
+	public int index() {
+		return p;
+	}
+
+	@Override
+	public int size() {
+		return n;
+	}
+
+	@Override
+	public String getSourceName() {
+		return sourceName;
+	}
+
+	@Override
+	public int getLine() {
+		return line;
+	}
+
+	@Override
+	public void setLine(int line) {
+		this.line = line;
+	}
+
+	@Override
+	public int getCharPositionInLine() {
+		return charPositionInLine;
+	}
+
+	@Override
+	public void setCharPositionInLine(int pos) {
+		this.charPositionInLine = pos;
+	}
+
+	/**
+	 * Converts an index of this stream into the index of the character, as
+	 * it would be in a stream of decoded characters.
+	 *
+	 * @param offset
+	 *            a byte offset, as returned by {@link #index()}
+	 * @return the number of characters before offset
+	 */
+	public int characterIndex(int offset) {
+		final int end = Math.min(offset, n);
+		int chars = 0;
+		for (int i = 0; i < end; i += lengthAt(i)) {
+			chars++;
+		}
+		return chars;
+	}
+
+	/**
+	 * The number of bytes of the character that starts at offset. Bytes that
+	 * do not start a valid UTF-8 sequence are a character on their own.
+	 */
+	private int lengthAt(int offset) {
+		final int b = buffer.get(offset) & 0xFF;
+		if (b < 0x80)
+			return 1;
+		int len;
+		if ((b >= 0xC2) && (b <= 0xDF)) {
+			len = 2;
+		} else if ((b >= 0xE0) && (b <= 0xEF)) {
+			len = 3;
+		} else if ((b >= 0xF0) && (b <= 0xF4)) {
+			len = 4;
+		} else
+			return 1;
+		if ((offset + len) > n)
+			return 1;
+		for (int k = 1; k < len; k++) {
+			if ((buffer.get(offset + k) & 0xC0) != 0x80)
+				return 1;
+		}
+		return len;
+	}
+
+	private int codePointAt(int offset) {
+		final int b = buffer.get(offset) & 0xFF;
+		switch (lengthAt(offset)) {
+		case 2:
+			return ((b & 0x1F) << 6) | (buffer.get(offset + 1) & 0x3F);
+		case 3:
+			return ((b & 0x0F) << 12) | ((buffer.get(offset + 1) & 0x3F) << 6) | (buffer.get(offset + 2) & 0x3F);
+		case 4:
+			return ((b & 0x07) << 18) | ((buffer.get(offset + 1) & 0x3F) << 12) | ((buffer.get(offset + 2) & 0x3F) << 6) | (buffer.get(offset + 3) & 0x3F);
+		default:
+			return b;
+		}
+	}
+
+	/**
+	 * The offset of the character before the one that starts at offset
+	 */
+	private int previous(int offset) {
+		int start = offset - 1;
+		while ((start > 0) && ((offset - start) < 4) && ((buffer.get(start) & 0xC0) == 0x80)) {
+			start--;
+		}
+		if ((start + lengthAt(start)) == offset)
+			return start;
+		return offset - 1;
+	}
+}
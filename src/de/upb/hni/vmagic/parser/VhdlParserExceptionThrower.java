@@ -47,8 +47,13 @@
  */
 package de.upb.hni.vmagic.parser;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
 import java.util.Collections;
 import java.util.List;
 
@@ -85,20 +90,70 @@ public class VhdlParserExceptionThrower {
 	private VhdlParserExceptionThrower() {
 	}
 
-	private static VhdlFile parse(VhdlParserSettings settings, CharStream stream, RootDeclarativeRegion rootScope, LibraryDeclarativeRegion libraryScope)
-			throws RecognitionException {
-		final VhdlAntlrLexer lexer = new VhdlAntlrLexer(stream) {
+	/**
+	 * The lexer, token stream and parser of a thread. Those are reset for
+	 * every file instead of being created again, which makes a difference when
+	 * many small files are imported.
+	 */
+	private static final class ParserSession {
+		private final VhdlAntlrLexer lexer = new VhdlAntlrLexer() {
 			@Override
 			public void emitErrorMessage(String msg) {
 				// super.emitErrorMessage(msg);
 			}
 		};
-		final CommonTokenStream ts = new CommonTokenStream(lexer);
+		private final CommonTokenStream ts = new CommonTokenStream();
+		private final VhdlAntlrParser parser = new VhdlAntlrParser(ts);
+		private boolean inUse;
+
+		public ParserSession() {
+			parser.setTreeAdaptor(new TreeAdaptorWithoutErrorNodes());
+		}
+
+		public void start(CharStream stream) {
+			inUse = true;
+			lexer.setCharStream(stream);
+			ts.setTokenSource(lexer);
+			parser.setTokenStream(ts);
+		}
+
+		/**
+		 * Drops the references to the last file, so that its tokens can be
+		 * garbage collected
+		 */
+		public void finish() {
+			lexer.setCharStream(null);
+			ts.setTokenSource(lexer);
+			parser.setTokenStream(ts);
+			inUse = false;
+		}
+	}
+
+	private static final ThreadLocal<ParserSession> SESSION = new ThreadLocal<ParserSession>() {
+		@Override
+		protected ParserSession initialValue() {
+			return new ParserSession();
+		}
+	};
+
+	private static VhdlFile parse(VhdlParserSettings settings, CharStream stream, RootDeclarativeRegion rootScope, LibraryDeclarativeRegion libraryScope)
+			throws RecognitionException {
+		ParserSession session = SESSION.get();
+		if (session.inUse) {
+			session = new ParserSession();
+		}
+		session.start(stream);
+		try {
+			return parse(settings, session.ts, session.parser, rootScope, libraryScope);
+		} finally {
+			session.finish();
+		}
+	}
 
-		final VhdlAntlrParser parser = new VhdlAntlrParser(ts);
+	private static VhdlFile parse(VhdlParserSettings settings, CommonTokenStream ts, VhdlAntlrParser parser, RootDeclarativeRegion rootScope,
+			LibraryDeclarativeRegion libraryScope) throws RecognitionException {
 		final ParseErrorCollector parseErrorCollector = new ParseErrorCollector();
 		parser.setErrorReporter(parseErrorCollector);
-		parser.setTreeAdaptor(new TreeAdaptorWithoutErrorNodes());
 
 		VhdlAntlrParser.design_file_return result;
 		try {
@@ -138,6 +193,40 @@ public class VhdlParserExceptionThrower {
 		return parse(settings, new CaseInsensitiveInputStream(stream), rootScope, libray);
 	}
 
+	/**
+	 * Parses the contents of a buffer without copying them into a char array.
+	 *
+	 * @see ByteBufferCharStream
+	 */
+	public static VhdlFile parseBuffer(ByteBuffer buffer, String sourceName, VhdlParserSettings settings, RootDeclarativeRegion rootScope,
+			LibraryDeclarativeRegion libray) throws RecognitionException {
+		return parse(settings, new ByteBufferCharStream(buffer, sourceName), rootScope, libray);
+	}
+
+	/**
+	 * Parses a file that is mapped into memory, so that large files do not
+	 * need to be held on the heap.
+	 *
+	 * @see ByteBufferCharStream
+	 */
+	public static VhdlFile parseFile(File file, VhdlParserSettings settings, RootDeclarativeRegion rootScope, LibraryDeclarativeRegion libray) throws IOException,
+			RecognitionException {
+		return parseBuffer(map(file), file.getPath(), settings, rootScope, libray);
+	}
+
+	/**
+	 * Maps a file read-only into memory. The mapping remains valid after the
+	 * channel is closed.
+	 */
+	public static ByteBuffer map(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+				throw new IOException("The file " + file + " is too large to be parsed");
+			return channel.map(MapMode.READ_ONLY, 0, size);
+		}
+	}
+
 	public static boolean hasParseErrors(VhdlFile file) {
 		return Annotations.getAnnotation(file, ParseErrors.class) != null;
 	}
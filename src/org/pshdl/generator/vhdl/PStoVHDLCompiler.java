@@ -27,12 +27,16 @@
 package org.pshdl.generator.vhdl;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 
 import org.antlr.runtime.tree.RewriteCardinalityException;
@@ -42,6 +46,8 @@ import org.apache.commons.cli.Options;
 import org.pshdl.generator.vhdl.VHDLOutputValidator.VHDLErrorCode;
 import org.pshdl.model.HDLClass;
 import org.pshdl.model.HDLInterface;
+import org.pshdl.model.HDLInterfaceInstantiation;
+import org.pshdl.model.HDLObject.GenericMeta;
 import org.pshdl.model.HDLPackage;
 import org.pshdl.model.HDLUnresolvedFragment;
 import org.pshdl.model.utils.HDLCodeGenerationException;
@@ -49,11 +55,16 @@ import org.pshdl.model.utils.HDLLibrary;
 import org.pshdl.model.utils.HDLProblemException;
 import org.pshdl.model.utils.HDLQualifiedName;
 import org.pshdl.model.utils.Insulin;
+import org.pshdl.model.utils.MetaAccess;
 import org.pshdl.model.utils.PSAbstractCompiler;
 import org.pshdl.model.utils.services.IOutputProvider;
 import org.pshdl.model.validation.Problem;
 
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 import de.upb.hni.vmagic.output.VhdlOutput;
 
@@ -76,6 +87,39 @@ public class PStoVHDLCompiler extends PSAbstractCompiler implements IOutputProvi
 
 	private static final String HOOK_NAME = "vhdl";
 
+	private VHDLGenerationSettings settings = new VHDLGenerationSettings();
+	private VHDLImportSettings importSettings = new VHDLImportSettings();
+	private VHDLLibraryIndex libraryIndex;
+
+	private static final class CachedResult {
+		public final HDLPackage parse;
+		public final VHDLGenerationSettings settings;
+		/**
+		 * The interfaces that the package instantiates, by full name
+		 */
+		public final Map<String, HDLInterface> interfaces;
+		public final CompileResult result;
+
+		public CachedResult(HDLPackage parse, VHDLGenerationSettings settings, Map<String, HDLInterface> interfaces, CompileResult result) {
+			this.parse = parse;
+			this.settings = settings;
+			this.interfaces = interfaces;
+			this.result = result;
+		}
+	}
+
+	/**
+	 * The last result of every src
+	 */
+	private final ConcurrentMap<String, CachedResult> results = new ConcurrentHashMap<>();
+	/**
+	 * The sources whose results are still valid after the last VHDL import
+	 * that invalidated the compiler. Their results are used once, if the
+	 * package and the settings are the same and the interfaces that the
+	 * package instantiates still resolve to equal declarations.
+	 */
+	private final Set<String> reusable = Sets.newConcurrentHashSet();
+
 	public PStoVHDLCompiler() {
 		this(null, null);
 	}
@@ -86,12 +130,88 @@ public class PStoVHDLCompiler extends PSAbstractCompiler implements IOutputProvi
 
 	@Override
 	public CompileResult doCompile(final String src, final HDLPackage parse) {
+		final CachedResult cached = results.get(src);
+		if (reusable.remove(src) && (cached != null) && (cached.parse == parse) && cached.settings.equals(settings)
+				&& cached.interfaces.equals(instantiatedInterfaces(parse)))
+			return cached.result;
+		if (libraryIndex != null) {
+			try {
+				libraryIndex.resolveMissing(this, parse);
+			} catch (final IOException e) {
+				throw new HDLCodeGenerationException(parse, "Failed to import from the VHDL library:" + e.getMessage(), "VHDL");
+			}
+		}
 		final HDLPackage transform = Insulin.transform(parse, src);
 		final HDLUnresolvedFragment[] allObjectsOf = (HDLUnresolvedFragment[]) transform.getAllObjectsOf(HDLClass.HDLUnresolvedFragment.clazz, true);
 		if (allObjectsOf.length != 0)
 			throw new HDLCodeGenerationException(allObjectsOf[0], "Some elements failed to resolve in the preparation", "VHDL");
-		final String vhdlCode = VhdlOutput.toVhdlString(VHDLPackageExtension.INST.toVHDL(transform));
-		return createResult(src, vhdlCode, getHookName(), false);
+		final VHDLGenerationSettings compileSettings = new VHDLGenerationSettings(settings);
+		final VHDLCompilationScope scope = VHDLCompilationScope.open(compileSettings);
+		try {
+			final String vhdlCode = VhdlOutput.toVhdlString(VHDLPackageExtension.INST.toVHDL(transform));
+			final CompileResult result = createResult(src, vhdlCode, getHookName(), false);
+			results.put(src, new CachedResult(parse, compileSettings, instantiatedInterfaces(parse), result));
+			return result;
+		} finally {
+			scope.close();
+		}
+	}
+
+	private static Map<String, HDLInterface> instantiatedInterfaces(HDLPackage pkg) {
+		final Map<String, HDLInterface> res = Maps.newHashMap();
+		for (final HDLInterfaceInstantiation hii : pkg.getAllObjectsOf(HDLInterfaceInstantiation.class, true)) {
+			final Optional<HDLInterface> hIf = hii.resolveHIf();
+			if (hIf.isPresent()) {
+				res.put(hIf.get().getName(), hIf.get());
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Drops the cached results of all sources that instantiate one of the
+	 * given interfaces. The results of all other sources are used again by
+	 * the next compilation.
+	 *
+	 * @param interfaces
+	 *            the full names of the interfaces
+	 */
+	public void invalidateDependents(Set<String> interfaces) {
+		for (final Map.Entry<String, CachedResult> e : results.entrySet()) {
+			if (!Collections.disjoint(e.getValue().interfaces.keySet(), interfaces)) {
+				results.remove(e.getKey(), e.getValue());
+			}
+		}
+		reusable.retainAll(results.keySet());
+		reusable.addAll(results.keySet());
+	}
+
+	public VHDLGenerationSettings getSettings() {
+		return settings;
+	}
+
+	public void setSettings(VHDLGenerationSettings settings) {
+		this.settings = settings;
+	}
+
+	public VHDLLibraryIndex getLibraryIndex() {
+		return libraryIndex;
+	}
+
+	/**
+	 * Sets the index from which interfaces that can not be resolved are
+	 * imported when a package is compiled
+	 */
+	public void setLibraryIndex(VHDLLibraryIndex libraryIndex) {
+		this.libraryIndex = libraryIndex;
+	}
+
+	public VHDLImportSettings getImportSettings() {
+		return importSettings;
+	}
+
+	public void setImportSettings(VHDLImportSettings importSettings) {
+		this.importSettings = importSettings;
 	}
 
 	/**
@@ -109,6 +229,18 @@ public class PStoVHDLCompiler extends PSAbstractCompiler implements IOutputProvi
 			return "Missing file arguments";
 		}
 		final File outDir = getOutputDir(cli);
+		settings.inlineCasts = cli.hasOption("inlineCasts");
+		settings.ternariesAsIf = cli.hasOption("ternariesAsIf");
+		settings.concurrentAssignments = cli.hasOption("concurrentAssignments");
+		settings.mergeClockedProcesses = cli.hasOption("mergeClockedProcesses");
+		settings.eliminateDeadSignals = cli.hasOption("eliminateDeadSignals");
+		importSettings.fastScan = cli.hasOption("fastImport");
+		if (cli.hasOption("importCache")) {
+			importSettings.cacheDirectory = new File(cli.getOptionValue("importCache"));
+		}
+		if (cli.hasOption("importSnapshot")) {
+			VHDLImportSnapshot.load(new File(cli.getOptionValue("importSnapshot")), HDLLibrary.getLibrary(uri));
+		}
 		final List<File> pshdlFiles = Lists.newArrayListWithCapacity(argList.size());
 		for (final String string : argList) {
 			final File file = new File(string);
@@ -129,6 +261,14 @@ public class PStoVHDLCompiler extends PSAbstractCompiler implements IOutputProvi
 				pshdlFiles.add(file);
 			}
 		}
+		if (cli.hasOption("vhdlLibrary")) {
+			libraryIndex = VHDLLibraryIndex.open(new File(cli.getOptionValue("vhdlLibrary")));
+			// The files are validated before they are compiled, so the
+			// entities they refer to are needed up front
+			for (final File file : pshdlFiles) {
+				libraryIndex.resolveReferences(this, file);
+			}
+		}
 		try {
 			if (addFiles(pshdlFiles)) {
 				printErrors();
@@ -179,9 +319,9 @@ public class PStoVHDLCompiler extends PSAbstractCompiler implements IOutputProvi
 	 * @throws IOException
 	 */
 	public static List<HDLInterface> addVHDL(PSAbstractCompiler comp, File file) throws IOException {
-		try (final FileInputStream fis = new FileInputStream(file)) {
-			return addVHDL(comp, fis, file.getAbsolutePath());
-		}
+		if (!file.isFile())
+			throw new FileNotFoundException(file.getAbsolutePath());
+		return addVHDL(comp, file, null, file.getAbsolutePath());
 	}
 
 	/**
@@ -197,11 +337,29 @@ public class PStoVHDLCompiler extends PSAbstractCompiler implements IOutputProvi
 	 * @return the generated interfaces of the VHDL file
 	 */
 	public static List<HDLInterface> addVHDL(PSAbstractCompiler comp, InputStream contents, String asSrc) {
-		comp.invalidate();
+		return addVHDL(comp, null, contents, asSrc);
+	}
+
+	/**
+	 * Files are mapped into memory by the importer, so only streams need to be
+	 * read completely
+	 */
+	private static List<HDLInterface> addVHDL(PSAbstractCompiler comp, File file, InputStream contents, String asSrc) {
 		final HDLLibrary lib = HDLLibrary.getLibrary(comp.uri);
 		List<HDLInterface> importFile = null;
+		final VHDLImportSettings importSettings;
+		if (comp instanceof PStoVHDLCompiler) {
+			importSettings = ((PStoVHDLCompiler) comp).getImportSettings();
+		} else {
+			importSettings = new VHDLImportSettings();
+		}
 		try {
-			importFile = VHDLImporter.importFile(HDLQualifiedName.create("VHDL", "work"), contents, lib, asSrc);
+			final HDLQualifiedName pkg = HDLQualifiedName.create("VHDL", "work");
+			if (file != null) {
+				importFile = VHDLImporter.importFile(pkg, file, lib, asSrc, importSettings);
+			} else {
+				importFile = VHDLImporter.importFile(pkg, contents, lib, asSrc, importSettings);
+			}
 			comp.clearError(asSrc);
 		} catch (final IOException | RewriteCardinalityException e) {
 			comp.addError(asSrc, new Problem(VHDLErrorCode.PARSE_ERROR, e.getMessage(), 0, 0, 1, 0));
@@ -210,9 +368,82 @@ public class PStoVHDLCompiler extends PSAbstractCompiler implements IOutputProvi
 				comp.addError(asSrc, p);
 			}
 		}
+		invalidateIfChanged(comp, lib, asSrc, importFile);
 		return importFile;
 	}
 
+	private final static MetaAccess<ConcurrentMap<String, List<HDLInterface>>> IMPORTED_INTERFACES = new GenericMeta<>("IMPORTED_INTERFACES", true);
+
+	/**
+	 * Invalidates the compiled results of the PSHDL sources that instantiate
+	 * an interface that was added, removed or changed by this import of src.
+	 * Changes to the architecture of a VHDL file don't affect the PSHDL code
+	 * that uses its entities, so nothing needs to be compiled again for them.
+	 * <p>
+	 * The interfaces are compared with {@link HDLInterface#equals(Object)},
+	 * which compares the declarations, but neither the meta data nor the
+	 * container, so importing an unchanged entity again yields an equal
+	 * interface.
+	 * <p>
+	 * {@link PSAbstractCompiler} can only invalidate all results. For a
+	 * {@link PStoVHDLCompiler}, only the results of the dependent sources are
+	 * dropped from its cache, the other sources are then not compiled again.
+	 * Other compilers are invalidated completely.
+	 *
+	 * @param interfaces
+	 *            the imported interfaces, or <code>null</code> if the import
+	 *            failed
+	 */
+	private static void invalidateIfChanged(PSAbstractCompiler comp, HDLLibrary lib, String src, List<HDLInterface> interfaces) {
+		ConcurrentMap<String, List<HDLInterface>> imported;
+		synchronized (lib) {
+			imported = lib.getMeta(IMPORTED_INTERFACES);
+			if (imported == null) {
+				imported = new ConcurrentHashMap<>();
+				lib.addMeta(IMPORTED_INTERFACES, imported);
+			}
+		}
+		final List<HDLInterface> previous;
+		if (interfaces == null) {
+			previous = imported.remove(src);
+		} else {
+			previous = imported.put(src, Lists.newArrayList(interfaces));
+		}
+		final Set<String> changed = changedInterfaces(previous, interfaces);
+		if (changed.isEmpty())
+			return;
+		if (comp instanceof PStoVHDLCompiler) {
+			((PStoVHDLCompiler) comp).invalidateDependents(changed);
+		}
+		comp.invalidate();
+	}
+
+	/**
+	 * The names of the interfaces that are only in one of the lists, or that
+	 * differ between them
+	 */
+	private static Set<String> changedInterfaces(List<HDLInterface> previous, List<HDLInterface> interfaces) {
+		final Map<String, HDLInterface> before = byName(previous);
+		final Map<String, HDLInterface> after = byName(interfaces);
+		final Set<String> res = Sets.newHashSet();
+		for (final String name : Sets.union(before.keySet(), after.keySet())) {
+			if (!Objects.equal(before.get(name), after.get(name))) {
+				res.add(name);
+			}
+		}
+		return res;
+	}
+
+	private static Map<String, HDLInterface> byName(List<HDLInterface> interfaces) {
+		final Map<String, HDLInterface> res = Maps.newHashMap();
+		if (interfaces != null) {
+			for (final HDLInterface hif : interfaces) {
+				res.put(hif.getName(), hif);
+			}
+		}
+		return res;
+	}
+
 	@Override
 	public String getHookName() {
 		return HOOK_NAME;
@@ -227,6 +458,15 @@ public class PStoVHDLCompiler extends PSAbstractCompiler implements IOutputProvi
 		final Options options = new Options();
 		options.addOption(new Option("o", "outputDir", true, "Specify the directory to which the files will be written, default is: src-gen"));
 		options.addOption(new Option("i", "interface", false, "Generate pshdl interface declarations for vhdl file arguments"));
+		options.addOption(new Option(null, "inlineCasts", false, "Use numeric_std conversions directly instead of the pshdl.Casts functions where possible"));
+		options.addOption(new Option(null, "ternariesAsIf", false, "Write ternaries that are assigned directly as if statements instead of ternaryOp calls"));
+		options.addOption(new Option(null, "concurrentAssignments", false, "Replace processes that only contain simple assignments with concurrent assignments"));
+		options.addOption(new Option(null, "mergeClockedProcesses", false, "Generate one process per clock and edge instead of one per register configuration"));
+		options.addOption(new Option(null, "eliminateDeadSignals", false, "Remove internal signals that are never read"));
+		options.addOption(new Option(null, "importCache", true, "Cache the interfaces of imported vhdl files in the given directory"));
+		options.addOption(new Option(null, "fastImport", false, "Only parse the entity declarations of imported vhdl files"));
+		options.addOption(new Option(null, "importSnapshot", true, "Load the interfaces of a snapshot created with VHDLImportSnapshot"));
+		options.addOption(new Option(null, "vhdlLibrary", true, "Index the vhdl files in the given directory and only import those that declare referenced entities"));
 		return new MultiOption(HOOK_NAME + " usage: [OPTIONS] <files>", null, options);
 	}
 
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * PSHDL is a library and (trans-)compiler for PSHDL input. It generates
+ *     output suitable for implementation or simulation of it.
+ *
+ *     Copyright (C) 2014 Karsten Becker (feedback (at) pshdl (dot) org)
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     This License does not grant permission to use the trade names, trademarks,
+ *     service marks, or product names of the Licensor, except as required for
+ *     reasonable and customary use in describing the origin of the Work.
+ *
+ * Contributors:
+ *     Karsten Becker - initial API and implementation
+ ******************************************************************************/
+package org.pshdl.generator.vhdl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.pshdl.model.HDLVariable;
+import org.pshdl.model.HDLVariableDeclaration;
+
+import com.google.common.collect.Maps;
+
+import de.upb.hni.vmagic.DiscreteRange;
+import de.upb.hni.vmagic.VhdlElement;
+import de.upb.hni.vmagic.output.VhdlOutput;
+import de.upb.hni.vmagic.type.ConstrainedArray;
+import de.upb.hni.vmagic.type.IndexSubtypeIndication;
+import de.upb.hni.vmagic.type.SubtypeIndication;
+import de.upb.hni.vmagic.type.Type;
+
+/**
+ * Interns the array types of a unit. Array variables with the same element
+ * type and the same ranges share a single {@link ConstrainedArray}
+ * declaration, both in the architecture and in the package of the unit. The
+ * name of a shared type is derived from its element type and ranges, so it
+ * can be computed for any variable without knowing whether the declaration
+ * has already been generated, and other units can compute the name of a
+ * package type as well.
+ *
+ * @author Karsten Becker
+ *
+ */
+public class VHDLArrayTypes {
+
+	private final Map<String, ConstrainedArray> internalTypes = Maps.newHashMap();
+	private final Map<String, ConstrainedArray> externalTypes = Maps.newHashMap();
+
+	/**
+	 * Declares the array type of a variable, or re-uses a structurally equal
+	 * one.
+	 *
+	 * @param hvar
+	 *            the array variable
+	 * @param elementType
+	 *            the type of the elements
+	 * @param ranges
+	 *            the ranges of all dimensions
+	 * @param external
+	 *            <code>true</code> if the type is declared in the package of
+	 *            the unit
+	 * @param res
+	 *            the context that receives new type declarations
+	 * @return the type to use for the variable
+	 */
+	public SubtypeIndication declare(HDLVariable hvar, SubtypeIndication elementType, List<DiscreteRange<?>> ranges, boolean external, VHDLContext res) {
+		final Map<String, ConstrainedArray> types = external ? externalTypes : internalTypes;
+		final String key = keyOf(elementType, ranges);
+		ConstrainedArray arrType = key == null ? null : types.get(key);
+		if (arrType == null) {
+			arrType = new ConstrainedArray(typeName(hvar, key, external), elementType, ranges.toArray(new DiscreteRange<?>[ranges.size()]));
+			res.addTypeDeclaration(arrType, external);
+			if (key != null) {
+				types.put(key, arrType);
+			}
+		}
+		return arrType;
+	}
+
+	/**
+	 * The name of the array type of a variable. This is the same name that
+	 * {@link #declare} uses, regardless of whether the variable has been
+	 * declared yet.
+	 *
+	 * @param hvar
+	 *            the array variable
+	 * @param external
+	 *            <code>true</code> if the type is declared in the package of
+	 *            the unit of the variable
+	 */
+	public static String getTypeName(HDLVariable hvar, boolean external) {
+		final HDLVariableDeclaration hvd = hvar.getContainer(HDLVariableDeclaration.class);
+		final SubtypeIndication elementType = VHDLStatementExtension.getElementType(hvd);
+		if (elementType == null)
+			return VHDLStatementExtension.getArrayRefName(hvar, external);
+		return typeName(hvar, keyOf(elementType, VHDLStatementExtension.getArrayRanges(hvar, hvd)), external);
+	}
+
+	/**
+	 * Types that are not understood are not shared and keep the name of their
+	 * variable. Package types are prefixed with the name of their unit, as the
+	 * packages of several units can be used by the same architecture.
+	 */
+	private static String typeName(HDLVariable hvar, String key, boolean external) {
+		if (key == null)
+			return VHDLStatementExtension.getArrayRefName(hvar, external);
+		final long hash = UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).getMostSignificantBits();
+		final String name = "array_" + Long.toHexString(hash);
+		if (!external)
+			return name;
+		final String unitName = VHDLStatementExtension.getOriginalFullName(hvar).skipLast(1).toString('_');
+		return VHDLUtils.getVHDLName(VHDLUtils.unescapeVHDLName(unitName) + '_' + name);
+	}
+
+	/**
+	 * A key that is equal for structurally equal array types, or
+	 * <code>null</code> if the element type is not understood
+	 */
+	private static String keyOf(SubtypeIndication elementType, List<?> ranges) {
+		final String typeKey = typeKeyOf(elementType);
+		if (typeKey == null)
+			return null;
+		final StringBuilder sb = new StringBuilder(typeKey);
+		for (final Object range : ranges) {
+			sb.append(';').append(VhdlOutput.toVhdlString((VhdlElement) range));
+		}
+		return sb.toString();
+	}
+
+	private static String typeKeyOf(SubtypeIndication type) {
+		if (type instanceof Type)
+			return ((Type) type).getIdentifier();
+		if (type instanceof IndexSubtypeIndication) {
+			final IndexSubtypeIndication indexType = (IndexSubtypeIndication) type;
+			final String key = keyOf(indexType.getBaseType(), indexType.getRanges());
+			return key == null ? null : '(' + key + ')';
+		}
+		return null;
+	}
+}
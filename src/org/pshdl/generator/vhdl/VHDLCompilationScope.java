@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * PSHDL is a library and (trans-)compiler for PSHDL input. It generates
+ *     output suitable for implementation or simulation of it.
+ *
+ *     Copyright (C) 2014 Karsten Becker (feedback (at) pshdl (dot) org)
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     This License does not grant permission to use the trade names, trademarks,
+ *     service marks, or product names of the Licensor, except as required for
+ *     reasonable and customary use in describing the origin of the Work.
+ *
+ * Contributors:
+ *     Karsten Becker - initial API and implementation
+ ******************************************************************************/
+package org.pshdl.generator.vhdl;
+
+import static org.pshdl.model.extensions.FullNameExtension.fullNameOf;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.pshdl.model.HDLArithOp;
+import org.pshdl.model.HDLAssignment;
+import org.pshdl.model.HDLExpression;
+import org.pshdl.model.HDLLiteral;
+import org.pshdl.model.HDLPackage;
+import org.pshdl.model.HDLRange;
+import org.pshdl.model.HDLReference;
+import org.pshdl.model.HDLUnit;
+import org.pshdl.model.HDLVariable;
+import org.pshdl.model.IHDLObject;
+import org.pshdl.model.evaluation.ConstantEvaluate;
+import org.pshdl.model.utils.HDLQualifiedName;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+
+import de.upb.hni.vmagic.DiscreteRange;
+import de.upb.hni.vmagic.Range;
+import de.upb.hni.vmagic.Range.Direction;
+import de.upb.hni.vmagic.type.ConstrainedArray;
+import de.upb.hni.vmagic.type.SubtypeIndication;
+
+/**
+ * Holds state that is valid for the translation of one {@link HDLPackage}
+ * into VHDL. The scope is bound to the current thread by {@link #open()} and
+ * can be accessed from the static helpers with {@link #current()}. When no
+ * scope is open, {@link #current()} returns a fresh scope so that callers
+ * don't need to distinguish both cases.
+ *
+ * @author Karsten Becker
+ *
+ */
+public class VHDLCompilationScope {
+
+	private static final ThreadLocal<VHDLCompilationScope> CURRENT = new ThreadLocal<>();
+
+	private int depth;
+	private final VHDLGenerationSettings settings;
+
+	private final Map<HDLExpression, Optional<BigInteger>> widthValues = Maps.newHashMap();
+	private final Map<RangeKey, Range> ranges = Maps.newHashMap();
+	private final LinkedList<UnitState> units = new LinkedList<>();
+
+	private static final class UnitState {
+		private final Set<HDLQualifiedName> deadSignals;
+		private final VHDLArrayTypes arrayTypes = new VHDLArrayTypes();
+
+		public UnitState(Set<HDLQualifiedName> deadSignals) {
+			this.deadSignals = deadSignals;
+		}
+	}
+
+	private VHDLCompilationScope(VHDLGenerationSettings settings) {
+		this.settings = settings;
+	}
+
+	/**
+	 * Opens a new scope with the default settings for the current thread, or
+	 * re-enters the already open one. Every call has to be matched by a
+	 * {@link #close()}.
+	 *
+	 * @return the scope that is now active
+	 */
+	public static VHDLCompilationScope open() {
+		return open(new VHDLGenerationSettings());
+	}
+
+	/**
+	 * Opens a new scope for the current thread, or re-enters the already open
+	 * one. When a scope is already open, its settings remain in effect.
+	 *
+	 * @param settings
+	 *            the settings for the generated code
+	 * @return the scope that is now active
+	 */
+	public static VHDLCompilationScope open(VHDLGenerationSettings settings) {
+		VHDLCompilationScope scope = CURRENT.get();
+		if (scope == null) {
+			scope = new VHDLCompilationScope(settings);
+			CURRENT.set(scope);
+		}
+		scope.depth++;
+		return scope;
+	}
+
+	/**
+	 * Leaves the scope. The outermost close releases all cached data.
+	 */
+	public void close() {
+		depth--;
+		if (depth <= 0) {
+			CURRENT.remove();
+		}
+	}
+
+	public static VHDLCompilationScope current() {
+		final VHDLCompilationScope scope = CURRENT.get();
+		if (scope == null)
+			return new VHDLCompilationScope(new VHDLGenerationSettings());
+		return scope;
+	}
+
+	public VHDLGenerationSettings getSettings() {
+		return settings;
+	}
+
+	/**
+	 * Evaluates a width expression. Widths that do not reference any variable
+	 * evaluate to the same value wherever they are used, so those are only
+	 * evaluated once per compilation.
+	 *
+	 * @param width
+	 *            the width expression, may be <code>null</code>
+	 * @return the constant value of the width, if it can be determined
+	 */
+	public Optional<BigInteger> valueOf(HDLExpression width) {
+		if ((width == null) || !isContextFree(width))
+			return ConstantEvaluate.valueOf(width, null);
+		Optional<BigInteger> value = widthValues.get(width);
+		if (value == null) {
+			value = ConstantEvaluate.valueOf(width, null);
+			widthValues.put(width, value);
+		}
+		return value;
+	}
+
+	/**
+	 * Starts the translation of a unit. Its state is kept until
+	 * {@link #leaveUnit()} is called. If enabled in the settings, the dead
+	 * signals of the unit are determined as well.
+	 *
+	 * @param unit
+	 *            the unit that is about to be translated
+	 */
+	public void enterUnit(HDLUnit unit) {
+		final Set<HDLQualifiedName> dead;
+		if (settings.eliminateDeadSignals) {
+			dead = VHDLDeadSignals.find(unit);
+		} else {
+			dead = Collections.emptySet();
+		}
+		units.push(new UnitState(dead));
+	}
+
+	public void leaveUnit() {
+		units.pop();
+	}
+
+	/**
+	 * Declares the array type of a variable. Within a unit, structurally equal
+	 * array types are only declared once.
+	 *
+	 * @see VHDLArrayTypes#declare(HDLVariable, SubtypeIndication, List,
+	 *      boolean, VHDLContext)
+	 */
+	public SubtypeIndication declareArrayType(HDLVariable hvar, SubtypeIndication elementType, List<DiscreteRange<?>> ranges, boolean external, VHDLContext res) {
+		final UnitState unit = units.peek();
+		if (unit != null)
+			return unit.arrayTypes.declare(hvar, elementType, ranges, external, res);
+		final ConstrainedArray arrType = new ConstrainedArray(VHDLStatementExtension.getArrayRefName(hvar, external), elementType,
+				ranges.toArray(new DiscreteRange<?>[ranges.size()]));
+		res.addTypeDeclaration(arrType, external);
+		return arrType;
+	}
+
+	/**
+	 * The name of the array type that is used for a variable
+	 */
+	public String getArrayTypeName(HDLVariable hvar, boolean external) {
+		if (!units.isEmpty())
+			return VHDLArrayTypes.getTypeName(hvar, external);
+		return VHDLStatementExtension.getArrayRefName(hvar, external);
+	}
+
+	/**
+	 * Checks whether the declaration of and the assignments to a variable can
+	 * be left out because its value is never observed.
+	 *
+	 * @param hvar
+	 *            the variable
+	 * @return <code>true</code> if the variable is a dead signal of the unit
+	 *         that is currently translated
+	 */
+	public boolean isDead(HDLVariable hvar) {
+		final UnitState unit = units.peek();
+		if ((unit == null) || unit.deadSignals.isEmpty())
+			return false;
+		return unit.deadSignals.contains(fullNameOf(hvar));
+	}
+
+	/**
+	 * Checks whether a reference is part of an assignment to a dead signal,
+	 * either on the right hand side or within an index of the target. Those
+	 * assignments are left out, so the reference is not read by the generated
+	 * code.
+	 *
+	 * @param ref
+	 *            the reference
+	 * @return <code>true</code> if the enclosing assignment of ref targets a
+	 *         dead signal of the unit that is currently translated
+	 */
+	public boolean isInDeadAssignment(HDLReference ref) {
+		final UnitState unit = units.peek();
+		if ((unit == null) || unit.deadSignals.isEmpty())
+			return false;
+		final HDLAssignment assignment = ref.getContainer(HDLAssignment.class);
+		if (assignment == null)
+			return false;
+		return unit.deadSignals.contains(VHDLDeadSignals.targetOf(assignment));
+	}
+
+	private static boolean isContextFree(HDLExpression width) {
+		if (width instanceof HDLLiteral)
+			return true;
+		if (width instanceof HDLReference)
+			return false;
+		return width.getAllObjectsOf(HDLReference.class, true).length == 0;
+	}
+
+	/**
+	 * Returns the VHDL range for an object with the given width. For
+	 * {@link Direction#DOWNTO} this is <code>width-1 downto 0</code>, for
+	 * {@link Direction#TO} it is <code>0 to width-1</code>. Structurally equal
+	 * widths that do not reference any variable share the same {@link Range}
+	 * instance.
+	 *
+	 * @param width
+	 *            the width of the object
+	 * @param container
+	 *            the container that is used to resolve the width
+	 * @param dir
+	 *            the direction of the range
+	 * @return the range
+	 */
+	public Range getRange(HDLExpression width, IHDLObject container, Direction dir) {
+		if (!isContextFree(width))
+			return createRange(width, container, dir);
+		final RangeKey key = new RangeKey(width, dir);
+		Range range = ranges.get(key);
+		if (range == null) {
+			range = createRange(width, container, dir);
+			ranges.put(key, range);
+		}
+		return range;
+	}
+
+	private static Range createRange(HDLExpression width, IHDLObject container, Direction dir) {
+		HDLRange hRange;
+		if (dir == Direction.DOWNTO) {
+			hRange = new HDLRange().setFrom(HDLArithOp.subtract(width, 1)).setTo(HDLLiteral.get(0));
+		} else {
+			hRange = new HDLRange().setFrom(HDLLiteral.get(0)).setTo(HDLArithOp.subtract(width, 1));
+		}
+		return VHDLExpressionExtension.INST.toVHDL(hRange.copyDeepFrozen(container), dir);
+	}
+
+	private static final class RangeKey {
+		private final HDLExpression width;
+		private final Direction dir;
+
+		public RangeKey(HDLExpression width, Direction dir) {
+			this.width = width;
+			this.dir = dir;
+		}
+
+		@Override
+		public int hashCode() {
+			return (31 * width.hashCode()) + dir.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof RangeKey))
+				return false;
+			final RangeKey other = (RangeKey) obj;
+			return (dir == other.dir) && width.equals(other.width);
+		}
+	}
+}
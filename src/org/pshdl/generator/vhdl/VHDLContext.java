@@ -28,6 +28,7 @@ package org.pshdl.generator.vhdl;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -38,23 +39,37 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.pshdl.model.HDLRegisterConfig;
 import org.pshdl.model.HDLStatement;
+import org.pshdl.model.HDLVariable;
+import org.pshdl.model.HDLVariableRef;
+import org.pshdl.model.types.builtIn.HDLBuiltInAnnotationProvider.HDLBuiltInAnnotations;
 import org.pshdl.model.utils.HDLQualifiedName;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 import de.upb.hni.vmagic.VhdlElement;
+import de.upb.hni.vmagic.WaveformElement;
 import de.upb.hni.vmagic.concurrent.ConcurrentStatement;
+import de.upb.hni.vmagic.concurrent.ConditionalSignalAssignment;
+import de.upb.hni.vmagic.concurrent.ConditionalSignalAssignment.ConditionalWaveformElement;
 import de.upb.hni.vmagic.declaration.Component;
 import de.upb.hni.vmagic.declaration.ConstantDeclaration;
 import de.upb.hni.vmagic.declaration.DeclarativeItem;
 import de.upb.hni.vmagic.declaration.DeclarativeItemMarker;
 import de.upb.hni.vmagic.declaration.ObjectDeclaration;
+import de.upb.hni.vmagic.expression.And;
+import de.upb.hni.vmagic.expression.Expression;
 import de.upb.hni.vmagic.object.Constant;
 import de.upb.hni.vmagic.object.Signal;
 import de.upb.hni.vmagic.output.VhdlOutput;
+import de.upb.hni.vmagic.statement.CaseStatement;
+import de.upb.hni.vmagic.statement.CaseStatement.Alternative;
+import de.upb.hni.vmagic.statement.ForStatement;
+import de.upb.hni.vmagic.statement.IfStatement;
 import de.upb.hni.vmagic.statement.SequentialStatement;
+import de.upb.hni.vmagic.statement.SignalAssignment;
 import de.upb.hni.vmagic.util.Comments;
 
 public class VHDLContext {
@@ -207,6 +222,170 @@ public class VHDLContext {
 		throw new NoSuchElementException("No Statement found");
 	}
 
+	/**
+	 * Removes if, case and for statements that contain no statements, for
+	 * example because all assignments within them went to dead signals.
+	 * Processes that end up without statements are removed as well, clocked
+	 * processes are kept as long as they have reset statements.
+	 */
+	public void removeEmptyStatements() {
+		final Iterator<Entry<Integer, LinkedList<SequentialStatement>>> unclocked = unclockedStatements.entrySet().iterator();
+		while (unclocked.hasNext()) {
+			final Entry<Integer, LinkedList<SequentialStatement>> e = unclocked.next();
+			if (removeEmpty(e.getValue())) {
+				unclocked.remove();
+				sensitiveStatements.remove(e.getKey());
+			}
+		}
+		final Iterator<Entry<HDLRegisterConfig, LinkedList<SequentialStatement>>> clocked = clockedStatements.entrySet().iterator();
+		while (clocked.hasNext()) {
+			final Entry<HDLRegisterConfig, LinkedList<SequentialStatement>> e = clocked.next();
+			if (removeEmpty(e.getValue()) && !resetStatements.containsKey(e.getKey())) {
+				clocked.remove();
+			}
+		}
+	}
+
+	/**
+	 * Removes the empty statements from a list and returns whether the list is
+	 * empty afterwards
+	 */
+	private static boolean removeEmpty(List<? extends SequentialStatement> statements) {
+		final Iterator<? extends SequentialStatement> iter = statements.iterator();
+		while (iter.hasNext()) {
+			if (isEmpty(iter.next())) {
+				iter.remove();
+			}
+		}
+		return statements.isEmpty();
+	}
+
+	private static boolean isEmpty(SequentialStatement stmnt) {
+		if (stmnt instanceof IfStatement) {
+			final IfStatement ifs = (IfStatement) stmnt;
+			boolean empty = removeEmpty(ifs.getStatements());
+			for (final IfStatement.ElsifPart elsif : ifs.getElsifParts()) {
+				empty &= removeEmpty(elsif.getStatements());
+			}
+			empty &= removeEmpty(ifs.getElseStatements());
+			return empty;
+		}
+		if (stmnt instanceof CaseStatement) {
+			boolean empty = true;
+			for (final Alternative alt : ((CaseStatement) stmnt).getAlternatives()) {
+				empty &= removeEmpty(alt.getStatements());
+			}
+			return empty;
+		}
+		if (stmnt instanceof ForStatement)
+			return removeEmpty(((ForStatement) stmnt).getStatements());
+		return false;
+	}
+
+	/**
+	 * Converts an unclocked process into concurrent signal assignments. This
+	 * is only possible when the process consists of nothing but assignments
+	 * to distinct signals that don't read any memory variables. An if
+	 * statement that assigns the same signal in every branch, including an
+	 * else branch, is written as conditional signal assignment with
+	 * <code>when ... else</code>.
+	 *
+	 * @param pid
+	 *            the process id
+	 * @return the concurrent assignments or <code>null</code> if the process
+	 *         can not be converted
+	 */
+	public List<ConcurrentStatement> toConcurrentAssignments(int pid) {
+		if (noSensitivity.containsKey(pid))
+			return null;
+		final LinkedList<SequentialStatement> statements = unclockedStatements.get(pid);
+		if (statements == null)
+			return null;
+		final List<ConcurrentStatement> res = Lists.newArrayListWithCapacity(statements.size());
+		final Set<String> targets = Sets.newHashSet();
+		for (final SequentialStatement stmnt : statements) {
+			final List<ConditionalWaveformElement> waveforms = Lists.newArrayList();
+			final Signal target = collectWaveforms(stmnt, null, waveforms);
+			if ((target == null) || !targets.add(target.getIdentifier()))
+				return null;
+			final ConditionalSignalAssignment csa = new ConditionalSignalAssignment(target, waveforms.get(0).getWaveform().get(0).getValue());
+			csa.getConditionalWaveforms().clear();
+			csa.getConditionalWaveforms().addAll(waveforms);
+			Comments.setComments(csa, Comments.getComments(stmnt));
+			res.add(csa);
+		}
+		final LinkedList<HDLStatement> hStatements = sensitiveStatements.get(pid);
+		if (hStatements != null) {
+			for (final HDLStatement stmnt : hStatements) {
+				for (final HDLVariableRef ref : stmnt.getAllObjectsOf(HDLVariableRef.class, true)) {
+					final Optional<HDLVariable> hvar = ref.resolveVar();
+					if (!hvar.isPresent() || (hvar.get().getAnnotation(HDLBuiltInAnnotations.memory) != null))
+						return null;
+				}
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Collects the waveforms of a statement that assigns the same signal on
+	 * every path. The conditions of nested if statements are combined with
+	 * the condition of the branch they are in.
+	 *
+	 * @param stmnt
+	 *            a signal assignment or an if statement
+	 * @param condition
+	 *            the condition under which stmnt is executed, or
+	 *            <code>null</code> if it is always executed
+	 * @param res
+	 *            the list to which the waveforms are added in the order in
+	 *            which their conditions need to be checked
+	 * @return the assigned signal or <code>null</code> if the statement can
+	 *         not be written as conditional signal assignment
+	 */
+	private static Signal collectWaveforms(SequentialStatement stmnt, Expression condition, List<ConditionalWaveformElement> res) {
+		if (stmnt instanceof SignalAssignment) {
+			final SignalAssignment sa = (SignalAssignment) stmnt;
+			if (!(sa.getTarget() instanceof Signal) || (sa.getDelayMechanism() != null) || (sa.getWaveform().size() != 1))
+				return null;
+			final WaveformElement wave = sa.getWaveform().get(0);
+			if (wave.getAfter() != null)
+				return null;
+			if (condition == null) {
+				res.add(new ConditionalWaveformElement(sa.getWaveform()));
+			} else {
+				res.add(new ConditionalWaveformElement(sa.getWaveform(), condition));
+			}
+			return (Signal) sa.getTarget();
+		}
+		if (!(stmnt instanceof IfStatement))
+			return null;
+		final IfStatement ifs = (IfStatement) stmnt;
+		// Without an else branch the signal keeps its value, which is a latch
+		if ((ifs.getStatements().size() != 1) || (ifs.getElseStatements().size() != 1))
+			return null;
+		final Signal target = collectWaveforms(ifs.getStatements().get(0), and(condition, ifs.getCondition()), res);
+		if (target == null)
+			return null;
+		for (final IfStatement.ElsifPart part : ifs.getElsifParts()) {
+			if ((part.getStatements().size() != 1) || !sameSignal(target, collectWaveforms(part.getStatements().get(0), and(condition, part.getCondition()), res)))
+				return null;
+		}
+		if (!sameSignal(target, collectWaveforms(ifs.getElseStatements().get(0), condition, res)))
+			return null;
+		return target;
+	}
+
+	private static boolean sameSignal(Signal target, Signal other) {
+		return (other != null) && target.getIdentifier().equalsIgnoreCase(other.getIdentifier());
+	}
+
+	private static Expression and(Expression left, Expression right) {
+		if (left == null)
+			return right;
+		return new And(VHDLPrecedence.left(And.class, left), VHDLPrecedence.right(And.class, right));
+	}
+
 	public void addConstantDeclaration(ConstantDeclaration cd) {
 		constants.add(cd);
 		internalTypesConstants.add(cd);
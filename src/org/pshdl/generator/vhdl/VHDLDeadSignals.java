@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * PSHDL is a library and (trans-)compiler for PSHDL input. It generates
+ *     output suitable for implementation or simulation of it.
+ *
+ *     Copyright (C) 2014 Karsten Becker (feedback (at) pshdl (dot) org)
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     This License does not grant permission to use the trade names, trademarks,
+ *     service marks, or product names of the Licensor, except as required for
+ *     reasonable and customary use in describing the origin of the Work.
+ *
+ * Contributors:
+ *     Karsten Becker - initial API and implementation
+ ******************************************************************************/
+package org.pshdl.generator.vhdl;
+
+import static org.pshdl.model.extensions.FullNameExtension.fullNameOf;
+
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+import org.pshdl.model.HDLAssignment;
+import org.pshdl.model.HDLInterface;
+import org.pshdl.model.HDLInterfaceInstantiation;
+import org.pshdl.model.HDLReference;
+import org.pshdl.model.HDLResolvedRef;
+import org.pshdl.model.HDLUnit;
+import org.pshdl.model.HDLVariable;
+import org.pshdl.model.HDLVariableDeclaration;
+import org.pshdl.model.HDLVariableDeclaration.HDLDirection;
+import org.pshdl.model.HDLVariableRef;
+import org.pshdl.model.utils.HDLQualifiedName;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Finds the internal signals of a unit whose value is never observed. A signal
+ * is observed when it is read anywhere outside of an assignment to another
+ * dead signal. Ports, parameters, constants and the signals of interface
+ * instances are always considered alive.
+ *
+ * @author Karsten Becker
+ *
+ */
+public class VHDLDeadSignals {
+
+	/**
+	 * Determines the dead signals of a unit. Signals that only feed each other
+	 * are detected as well. Every reference is resolved once. A read within an
+	 * assignment to another internal signal only keeps the read signal alive
+	 * if the target is alive, all other reads keep it alive unconditionally.
+	 * Liveness is then propagated from those reads along the assignments.
+	 *
+	 * @param unit
+	 *            the unit to analyze
+	 * @return the full names of all internal signals that can be removed
+	 */
+	public static Set<HDLQualifiedName> find(HDLUnit unit) {
+		final Set<HDLQualifiedName> candidates = Sets.newHashSet();
+		for (final HDLVariableDeclaration hvd : unit.getAllObjectsOf(HDLVariableDeclaration.class, true)) {
+			if ((hvd.getDirection() != HDLDirection.INTERNAL) || (hvd.getContainer(HDLInterface.class) != null)) {
+				continue;
+			}
+			for (final HDLVariable hvar : hvd.getVariables()) {
+				if (hvar.getMeta(HDLInterfaceInstantiation.ORIG_NAME) == null) {
+					candidates.add(fullNameOf(hvar));
+				}
+			}
+		}
+		if (candidates.isEmpty())
+			return candidates;
+		final Map<HDLQualifiedName, Set<HDLQualifiedName>> sources = Maps.newHashMap();
+		final Set<HDLQualifiedName> alive = Sets.newHashSet();
+		final LinkedList<HDLQualifiedName> worklist = new LinkedList<>();
+		for (final HDLVariableRef ref : unit.getAllObjectsOf(HDLVariableRef.class, true)) {
+			final Optional<HDLVariable> hvar = ref.resolveVar();
+			if (!hvar.isPresent()) {
+				continue;
+			}
+			final HDLQualifiedName name = fullNameOf(hvar.get());
+			if (!candidates.contains(name)) {
+				continue;
+			}
+			final HDLAssignment assignment = ref.getContainer(HDLAssignment.class);
+			if (assignment != null) {
+				if (assignment.getLeft() == ref) {
+					continue;
+				}
+				final HDLQualifiedName target = targetOf(assignment);
+				if (candidates.contains(target)) {
+					Set<HDLQualifiedName> read = sources.get(target);
+					if (read == null) {
+						read = Sets.newHashSet();
+						sources.put(target, read);
+					}
+					read.add(name);
+					continue;
+				}
+			}
+			if (alive.add(name)) {
+				worklist.add(name);
+			}
+		}
+		while (!worklist.isEmpty()) {
+			final Set<HDLQualifiedName> read = sources.get(worklist.poll());
+			if (read == null) {
+				continue;
+			}
+			for (final HDLQualifiedName name : read) {
+				if (alive.add(name)) {
+					worklist.add(name);
+				}
+			}
+		}
+		return Sets.newHashSet(Sets.difference(candidates, alive));
+	}
+
+	static HDLQualifiedName targetOf(HDLAssignment assignment) {
+		final HDLReference left = assignment.getLeft();
+		if (!(left instanceof HDLResolvedRef))
+			return null;
+		final Optional<HDLVariable> hvar = ((HDLResolvedRef) left).resolveVar();
+		if (!hvar.isPresent())
+			return null;
+		return fullNameOf(hvar.get());
+	}
+}
@@ -49,7 +49,6 @@ import de.upb.hni.vmagic.expression.Name
 import de.upb.hni.vmagic.expression.Not
 import de.upb.hni.vmagic.expression.NotEquals
 import de.upb.hni.vmagic.expression.Or
-import de.upb.hni.vmagic.expression.Parentheses
 import de.upb.hni.vmagic.expression.Pow
 import de.upb.hni.vmagic.expression.Rem
 import de.upb.hni.vmagic.expression.Subtract
@@ -196,7 +195,8 @@ class VHDLExpressionExtension {
 		var Expression res = cats.get(0).toVHDL
 		cats.remove(0)
 		for (HDLExpression cat : cats) {
-			res = new Concatenate(res, cat.toVHDL)
+			res = new Concatenate(VHDLPrecedence.left(typeof(Concatenate), res),
+				VHDLPrecedence.right(typeof(Concatenate), cat.toVHDL))
 		}
 		return res
 	}
@@ -204,9 +204,9 @@ class VHDLExpressionExtension {
 	def dispatch Expression toVHDL(HDLManip obj) {
 		switch (type:obj.type) {
 			case ARITH_NEG:
-				return new Minus(obj.target.toVHDL)
+				return new Minus(VHDLPrecedence.unary(typeof(Minus), obj.target.toVHDL))
 			case type === LOGIC_NEG || type === BIT_NEG:
-				return new Not(obj.target.toVHDL)
+				return new Not(VHDLPrecedence.unary(typeof(Not), obj.target.toVHDL))
 			case CAST: {
 				val HDLPrimitive targetType = obj.castTo as HDLPrimitive
 				if (targetType.type === HDLPrimitiveType.STRING)
@@ -279,24 +279,38 @@ class VHDLExpressionExtension {
 	}
 
 	def dispatch Expression toVHDL(HDLShiftOp obj) {
+		val scope = VHDLCompilationScope.current
 		val HDLPrimitive type = TypeExtension.typeOfForced(obj.left, "VHDL") as HDLPrimitive
-		return VHDLShiftLibrary.shift(obj.left.toVHDL, obj.right.toVHDL, type.type, obj.type)
+		val left = obj.left.toVHDL
+		val amount = scope.valueOf(obj.right)
+		if (amount.present) {
+			val shifted = VHDLShiftLibrary.shiftConstant(left, obj.left, amount.get, type, obj.type)
+			if (shifted !== null)
+				return shifted
+		}
+		return VHDLShiftLibrary.shift(left, obj.right.toVHDL, type.type, obj.type)
 	}
 
 	def dispatch Expression toVHDL(HDLEqualityOp obj) {
 		switch (obj.type) {
 			case EQ:
-				return new Parentheses(new Equals(obj.left.toVHDL, obj.right.toVHDL))
+				return new Equals(VHDLPrecedence.left(typeof(Equals), obj.left.toVHDL),
+					VHDLPrecedence.right(typeof(Equals), obj.right.toVHDL))
 			case GREATER_EQ:
-				return new Parentheses(new GreaterEquals(obj.left.toVHDL, obj.right.toVHDL))
+				return new GreaterEquals(VHDLPrecedence.left(typeof(GreaterEquals), obj.left.toVHDL),
+					VHDLPrecedence.right(typeof(GreaterEquals), obj.right.toVHDL))
 			case GREATER:
-				return new Parentheses(new GreaterThan(obj.left.toVHDL, obj.right.toVHDL))
+				return new GreaterThan(VHDLPrecedence.left(typeof(GreaterThan), obj.left.toVHDL),
+					VHDLPrecedence.right(typeof(GreaterThan), obj.right.toVHDL))
 			case LESS_EQ:
-				return new Parentheses(new LessEquals(obj.left.toVHDL, obj.right.toVHDL))
+				return new LessEquals(VHDLPrecedence.left(typeof(LessEquals), obj.left.toVHDL),
+					VHDLPrecedence.right(typeof(LessEquals), obj.right.toVHDL))
 			case LESS:
-				return new Parentheses(new LessThan(obj.left.toVHDL, obj.right.toVHDL))
+				return new LessThan(VHDLPrecedence.left(typeof(LessThan), obj.left.toVHDL),
+					VHDLPrecedence.right(typeof(LessThan), obj.right.toVHDL))
 			case NOT_EQ:
-				return new Parentheses(new NotEquals(obj.left.toVHDL, obj.right.toVHDL))
+				return new NotEquals(VHDLPrecedence.left(typeof(NotEquals), obj.left.toVHDL),
+					VHDLPrecedence.right(typeof(NotEquals), obj.right.toVHDL))
 		}
 		throw new IllegalArgumentException("Not supported:" + obj)
 	}
@@ -304,11 +318,14 @@ class VHDLExpressionExtension {
 	def dispatch Expression toVHDL(HDLBitOp obj) {
 		switch (type:obj.type) {
 			case type === AND || type === LOGI_AND:
-				return new Parentheses(new And(obj.left.toVHDL, obj.right.toVHDL))
+				return new And(VHDLPrecedence.left(typeof(And), obj.left.toVHDL),
+					VHDLPrecedence.right(typeof(And), obj.right.toVHDL))
 			case type === OR || type === LOGI_OR:
-				return new Parentheses(new Or(obj.left.toVHDL, obj.right.toVHDL))
+				return new Or(VHDLPrecedence.left(typeof(Or), obj.left.toVHDL),
+					VHDLPrecedence.right(typeof(Or), obj.right.toVHDL))
 			case XOR:
-				return new Parentheses(new Xor(obj.left.toVHDL, obj.right.toVHDL))
+				return new Xor(VHDLPrecedence.left(typeof(Xor), obj.left.toVHDL),
+					VHDLPrecedence.right(typeof(Xor), obj.right.toVHDL))
 		}
 		throw new IllegalArgumentException("Not supported:" + obj)
 	}
@@ -316,17 +333,23 @@ class VHDLExpressionExtension {
 	def dispatch Expression toVHDL(HDLArithOp obj) {
 		switch (obj.type) {
 			case PLUS:
-				return new Parentheses(new Add(obj.left.toVHDL, obj.right.toVHDL))
+				return new Add(VHDLPrecedence.left(typeof(Add), obj.left.toVHDL),
+					VHDLPrecedence.right(typeof(Add), obj.right.toVHDL))
 			case MINUS:
-				return new Parentheses(new Subtract(obj.left.toVHDL, obj.right.toVHDL))
+				return new Subtract(VHDLPrecedence.left(typeof(Subtract), obj.left.toVHDL),
+					VHDLPrecedence.right(typeof(Subtract), obj.right.toVHDL))
 			case DIV:
-				return new Parentheses(new Divide(obj.left.toVHDL, obj.right.toVHDL))
+				return new Divide(VHDLPrecedence.left(typeof(Divide), obj.left.toVHDL),
+					VHDLPrecedence.right(typeof(Divide), obj.right.toVHDL))
 			case MUL:
-				return new Parentheses(new Multiply(obj.left.toVHDL, obj.right.toVHDL))
+				return new Multiply(VHDLPrecedence.left(typeof(Multiply), obj.left.toVHDL),
+					VHDLPrecedence.right(typeof(Multiply), obj.right.toVHDL))
 			case MOD:
-				return new Parentheses(new Rem(obj.left.toVHDL, obj.right.toVHDL))
+				return new Rem(VHDLPrecedence.left(typeof(Rem), obj.left.toVHDL),
+					VHDLPrecedence.right(typeof(Rem), obj.right.toVHDL))
 			case POW:
-				return new Parentheses(new Pow(obj.left.toVHDL, obj.right.toVHDL))
+				return new Pow(VHDLPrecedence.left(typeof(Pow), obj.left.toVHDL),
+					VHDLPrecedence.right(typeof(Pow), obj.right.toVHDL))
 		}
 		throw new IllegalArgumentException("Not supported:" + obj)
 	}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * PSHDL is a library and (trans-)compiler for PSHDL input. It generates
+ *     output suitable for implementation or simulation of it.
+ *
+ *     Copyright (C) 2014 Karsten Becker (feedback (at) pshdl (dot) org)
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     This License does not grant permission to use the trade names, trademarks,
+ *     service marks, or product names of the Licensor, except as required for
+ *     reasonable and customary use in describing the origin of the Work.
+ *
+ * Contributors:
+ *     Karsten Becker - initial API and implementation
+ ******************************************************************************/
+package org.pshdl.generator.vhdl;
+
+/**
+ * Options that influence the VHDL code that is generated. The settings of the
+ * current compilation can be obtained from {@link VHDLCompilationScope}.
+ *
+ * @author Karsten Becker
+ *
+ */
+public class VHDLGenerationSettings {
+
+	/**
+	 * When <code>true</code>, casts and resizes are written with the
+	 * numeric_std functions and type conversions instead of calling the
+	 * wrappers in pshdl.Casts where possible.
+	 */
+	public boolean inlineCasts = false;
+
+	/**
+	 * When <code>true</code>, ternaries that are the whole right hand side of
+	 * an assignment are written as if statements instead of calls to the
+	 * ternaryOp functions. Ternaries in their branches become elsif parts or
+	 * nested if statements. Ternaries within other expressions still use
+	 * ternaryOp. With {@link #concurrentAssignments}, such if statements
+	 * become conditional signal assignments.
+	 */
+	public boolean ternariesAsIf = false;
+
+	/**
+	 * When <code>true</code>, unclocked processes that only contain
+	 * unconditional signal assignments are written as concurrent assignments.
+	 */
+	public boolean concurrentAssignments = false;
+
+	/**
+	 * When <code>true</code>, registers that share the same clock and edge are
+	 * written into one process, regardless of their reset configuration.
+	 */
+	public boolean mergeClockedProcesses = false;
+
+	/**
+	 * When <code>true</code>, internal signals that are never read are not
+	 * declared and not assigned.
+	 */
+	public boolean eliminateDeadSignals = false;
+
+	public VHDLGenerationSettings() {
+	}
+
+	public VHDLGenerationSettings(VHDLGenerationSettings other) {
+		this.inlineCasts = other.inlineCasts;
+		this.ternariesAsIf = other.ternariesAsIf;
+		this.concurrentAssignments = other.concurrentAssignments;
+		this.mergeClockedProcesses = other.mergeClockedProcesses;
+		this.eliminateDeadSignals = other.eliminateDeadSignals;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = (prime * result) + (inlineCasts ? 1231 : 1237);
+		result = (prime * result) + (ternariesAsIf ? 1231 : 1237);
+		result = (prime * result) + (concurrentAssignments ? 1231 : 1237);
+		result = (prime * result) + (mergeClockedProcesses ? 1231 : 1237);
+		result = (prime * result) + (eliminateDeadSignals ? 1231 : 1237);
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		final VHDLGenerationSettings other = (VHDLGenerationSettings) obj;
+		if (inlineCasts != other.inlineCasts)
+			return false;
+		if (ternariesAsIf != other.ternariesAsIf)
+			return false;
+		if (concurrentAssignments != other.concurrentAssignments)
+			return false;
+		if (mergeClockedProcesses != other.mergeClockedProcesses)
+			return false;
+		if (eliminateDeadSignals != other.eliminateDeadSignals)
+			return false;
+		return true;
+	}
+
+}
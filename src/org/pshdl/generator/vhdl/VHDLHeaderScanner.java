@@ -0,0 +1,448 @@
+/*******************************************************************************
+ * PSHDL is a library and (trans-)compiler for PSHDL input. It generates
+ *     output suitable for implementation or simulation of it.
+ *
+ *     Copyright (C) 2014 Karsten Becker (feedback (at) pshdl (dot) org)
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     This License does not grant permission to use the trade names, trademarks,
+ *     service marks, or product names of the Licensor, except as required for
+ *     reasonable and customary use in describing the origin of the Work.
+ *
+ * Contributors:
+ *     Karsten Becker - initial API and implementation
+ ******************************************************************************/
+package org.pshdl.generator.vhdl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Finds the design units in VHDL source code that are needed to import
+ * interfaces. Entity and package declarations are returned together with the
+ * context clause that precedes them, so that they can be parsed on their own,
+ * while architectures, package bodies and configurations are skipped.
+ * <p>
+ * The scanner works on the bytes of the file and only recognizes comments,
+ * string and character literals, identifiers and semicolons. A declaration
+ * starts with <code>entity</code> or <code>package</code> at the start of a
+ * statement and ends with an <code>end</code> that is followed by nothing,
+ * the kind of the unit or its name.
+ *
+ * @author Karsten Becker
+ *
+ */
+public class VHDLHeaderScanner {
+
+	private final ByteBuffer src;
+	private final int length;
+	private int pos;
+	private int tokenStart;
+	private String ident;
+	private boolean semicolon;
+	/**
+	 * A tick after an identifier or a closing parenthesis starts an attribute,
+	 * not a character literal
+	 */
+	private boolean tickIsAttribute;
+	private boolean packageDeclaration;
+	private String declarationName;
+
+	private VHDLHeaderScanner(ByteBuffer src) {
+		this.src = src.slice();
+		this.length = this.src.limit();
+	}
+
+	/**
+	 * Collects the names of the entities and packages that are declared in
+	 * the source. The names are in lower case.
+	 *
+	 * @param src
+	 *            the contents of a VHDL file
+	 * @param entities
+	 *            the list to which the entity names are added
+	 * @param packages
+	 *            the list to which the package names are added
+	 */
+	public static void scanDeclarations(byte[] src, List<String> entities, List<String> packages) {
+		final VHDLHeaderScanner scanner = new VHDLHeaderScanner(ByteBuffer.wrap(src));
+		while (scanner.nextDeclaration() != null) {
+			if (scanner.getDeclarationName() == null) {
+				continue;
+			}
+			if (scanner.isPackageDeclaration()) {
+				packages.add(scanner.getDeclarationName());
+			} else {
+				entities.add(scanner.getDeclarationName());
+			}
+		}
+	}
+
+	/**
+	 * Collects the names of the packages and entities that the source refers
+	 * to. Packages are taken from <code>use</code> clauses of libraries other
+	 * than <code>ieee</code> and <code>std</code>, entities from direct
+	 * instantiations with <code>entity</code>, from binding indications such
+	 * as <code>use entity work.foo(rtl)</code> and from the entities that
+	 * architectures and configurations belong to. The names are in lower case
+	 * and might include declarations of the source itself.
+	 *
+	 * @param src
+	 *            the contents of a VHDL file
+	 * @param packages
+	 *            the list to which the used package names are added
+	 * @param entities
+	 *            the list to which the referenced entity names are added
+	 */
+	public static void scanReferences(byte[] src, List<String> packages, List<String> entities) {
+		scanReferences(ByteBuffer.wrap(src), packages, entities);
+	}
+
+	/**
+	 * @see #scanReferences(byte[], List, List)
+	 */
+	public static void scanReferences(ByteBuffer src, List<String> packages, List<String> entities) {
+		final VHDLHeaderScanner scanner = new VHDLHeaderScanner(src);
+		boolean afterColon = false;
+		while (scanner.nextToken()) {
+			final boolean atInstantiation = afterColon;
+			afterColon = scanner.isSymbol(':');
+			// use is a reserved word, so it always starts a use clause or a
+			// binding indication of a configuration
+			if ("use".equals(scanner.ident)) {
+				final String next = scanner.peekIdent();
+				if ("entity".equals(next)) {
+					scanner.nextToken();
+					scanner.scanEntityName(entities);
+				} else if (!"configuration".equals(next)) {
+					scanner.scanUseClause(packages);
+				}
+			} else if ("entity".equals(scanner.ident) && atInstantiation) {
+				scanner.scanEntityName(entities);
+			} else if ("architecture".equals(scanner.ident) || "configuration".equals(scanner.ident)) {
+				// The name of the unit, or the semicolon of an end
+				scanner.nextToken();
+				if ("of".equals(scanner.peekIdent())) {
+					scanner.nextToken();
+					scanner.scanEntityName(entities);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the possibly selected name of an entity after the
+	 * <code>entity</code> keyword
+	 */
+	private void scanEntityName(List<String> entities) {
+		String name = nextIdent();
+		if (peekSymbol() == '.') {
+			nextToken();
+			name = nextIdent();
+		}
+		if ((name != null) && !entities.contains(name)) {
+			entities.add(name);
+		}
+	}
+
+	/**
+	 * Reads the names of a <code>use</code> clause up to its semicolon
+	 */
+	private void scanUseClause(List<String> packages) {
+		String library = null;
+		int segment = 0;
+		while (nextToken() && !semicolon) {
+			if (isSymbol('.')) {
+				segment++;
+			} else if (isSymbol(',')) {
+				segment = 0;
+				library = null;
+			} else if (ident != null) {
+				if (segment == 0) {
+					library = ident;
+				} else if ((segment == 1) && !"ieee".equals(library) && !"std".equals(library) && !packages.contains(ident)) {
+					packages.add(ident);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates a scanner that iterates over the entity and package declarations
+	 * of a source with {@link #nextDeclaration()}.
+	 *
+	 * @param src
+	 *            the contents of a VHDL file
+	 */
+	public static VHDLHeaderScanner declarations(ByteBuffer src) {
+		return new VHDLHeaderScanner(src);
+	}
+
+	/**
+	 * Advances to the next entity or package declaration. The declaration is
+	 * returned together with the context clause that precedes it, so that it
+	 * can be parsed on its own.
+	 *
+	 * @return the declaration, or <code>null</code> if there are no more
+	 *         declarations
+	 */
+	public ByteBuffer nextDeclaration() {
+		int contextStart = -1;
+		int unitStart = -1;
+		String unitName = null;
+		boolean stmtStart = true;
+		boolean closing = false;
+		while (nextToken()) {
+			if (semicolon) {
+				if (closing) {
+					final ByteBuffer res = src.duplicate();
+					res.limit(pos);
+					res.position(unitStart);
+					return res.slice();
+				}
+				stmtStart = true;
+				continue;
+			}
+			final boolean atStmtStart = stmtStart;
+			stmtStart = false;
+			if (ident == null) {
+				continue;
+			}
+			if (unitStart >= 0) {
+				if ("end".equals(ident)) {
+					final String name = peekIdent();
+					closing = (name == null) || name.equals("entity") || name.equals("package") || name.equals(unitName);
+				}
+				continue;
+			}
+			if (!atStmtStart) {
+				continue;
+			}
+			switch (ident) {
+			case "library":
+			case "use":
+			case "context":
+				if (contextStart < 0) {
+					contextStart = tokenStart;
+				}
+				break;
+			case "entity":
+			case "package":
+				if ("package".equals(ident) && "body".equals(peekIdent())) {
+					contextStart = -1;
+				} else {
+					unitStart = contextStart >= 0 ? contextStart : tokenStart;
+					packageDeclaration = "package".equals(ident);
+					unitName = nextIdent();
+					declarationName = unitName;
+				}
+				break;
+			default:
+				contextStart = -1;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Whether the declaration that was last returned by
+	 * {@link #nextDeclaration()} is a package declaration
+	 */
+	public boolean isPackageDeclaration() {
+		return packageDeclaration;
+	}
+
+	/**
+	 * The lower case name of the declaration that was last returned by
+	 * {@link #nextDeclaration()}
+	 */
+	public String getDeclarationName() {
+		return declarationName;
+	}
+
+	/**
+	 * Returns the next token if it is an identifier, without consuming it
+	 */
+	private String peekIdent() {
+		final int oldPos = pos;
+		final int oldStart = tokenStart;
+		final String oldIdent = ident;
+		final boolean oldSemicolon = semicolon;
+		final boolean oldTick = tickIsAttribute;
+		final String res = nextIdent();
+		pos = oldPos;
+		tokenStart = oldStart;
+		ident = oldIdent;
+		semicolon = oldSemicolon;
+		tickIsAttribute = oldTick;
+		return res;
+	}
+
+	/**
+	 * Returns the first character of the next token, without consuming it
+	 */
+	private int peekSymbol() {
+		final int oldPos = pos;
+		final int oldStart = tokenStart;
+		final String oldIdent = ident;
+		final boolean oldSemicolon = semicolon;
+		final boolean oldTick = tickIsAttribute;
+		final int res = nextToken() ? src.get(tokenStart) & 0xFF : -1;
+		pos = oldPos;
+		tokenStart = oldStart;
+		ident = oldIdent;
+		semicolon = oldSemicolon;
+		tickIsAttribute = oldTick;
+		return res;
+	}
+
+	/**
+	 * Whether the current token is the given single character symbol
+	 */
+	private boolean isSymbol(char c) {
+		return (ident == null) && (pos == (tokenStart + 1)) && (src.get(tokenStart) == c);
+	}
+
+	private String nextIdent() {
+		if (!nextToken())
+			return null;
+		return ident;
+	}
+
+	/**
+	 * Advances to the next token. Afterwards {@link #ident} is the lower case
+	 * identifier or <code>null</code> if the token is not an identifier, and
+	 * {@link #semicolon} tells whether the token is a semicolon.
+	 *
+	 * @return <code>false</code> if the end of the source has been reached
+	 */
+	private boolean nextToken() {
+		final boolean afterName = tickIsAttribute;
+		tickIsAttribute = false;
+		ident = null;
+		semicolon = false;
+		while (pos < length) {
+			final int c = src.get(pos) & 0xFF;
+			tokenStart = pos;
+			if ((c == '-') && (peek(1) == '-')) {
+				skipLine();
+				continue;
+			}
+			if ((c == '/') && (peek(1) == '*')) {
+				skipBlockComment();
+				continue;
+			}
+			if ((c <= ' ') || (c == 0x7F)) {
+				pos++;
+				continue;
+			}
+			if (c == ';') {
+				pos++;
+				semicolon = true;
+				return true;
+			}
+			if (isLetter(c)) {
+				pos++;
+				while ((pos < length) && isIdentPart(src.get(pos) & 0xFF)) {
+					pos++;
+				}
+				final byte[] name = new byte[pos - tokenStart];
+				for (int i = 0; i < name.length; i++) {
+					name[i] = src.get(tokenStart + i);
+				}
+				ident = new String(name, StandardCharsets.ISO_8859_1).toLowerCase();
+				tickIsAttribute = true;
+				return true;
+			}
+			if (isDigit(c)) {
+				pos++;
+				while ((pos < length) && (isIdentPart(src.get(pos) & 0xFF) || (src.get(pos) == '#') || (src.get(pos) == '.'))) {
+					pos++;
+				}
+				return true;
+			}
+			if (c == '"') {
+				skipString('"');
+				return true;
+			}
+			if (c == '\\') {
+				skipString('\\');
+				tickIsAttribute = true;
+				return true;
+			}
+			if ((c == '\'') && !afterName && (peek(2) == '\'')) {
+				pos += 3;
+				return true;
+			}
+			pos++;
+			tickIsAttribute = c == ')';
+			return true;
+		}
+		return false;
+	}
+
+	private int peek(int offset) {
+		final int idx = pos + offset;
+		if (idx < length)
+			return src.get(idx) & 0xFF;
+		return -1;
+	}
+
+	private void skipLine() {
+		while ((pos < length) && (src.get(pos) != '\n')) {
+			pos++;
+		}
+	}
+
+	private void skipBlockComment() {
+		pos += 2;
+		while ((pos < length) && !((src.get(pos) == '*') && (peek(1) == '/'))) {
+			pos++;
+		}
+		pos = Math.min(pos + 2, length);
+	}
+
+	/**
+	 * Skips a string literal or extended identifier. Doubled delimiters are
+	 * part of the literal.
+	 */
+	private void skipString(char delimiter) {
+		pos++;
+		while (pos < length) {
+			final byte b = src.get(pos++);
+			if (b == delimiter) {
+				if ((pos < length) && (src.get(pos) == delimiter)) {
+					pos++;
+				} else {
+					return;
+				}
+			} else if (b == '\n')
+				return;
+		}
+	}
+
+	private static boolean isLetter(int c) {
+		return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')) || (c >= 0xC0);
+	}
+
+	private static boolean isDigit(int c) {
+		return (c >= '0') && (c <= '9');
+	}
+
+	private static boolean isIdentPart(int c) {
+		return isLetter(c) || isDigit(c) || (c == '_');
+	}
+}
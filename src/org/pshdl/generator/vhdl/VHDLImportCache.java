@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * PSHDL is a library and (trans-)compiler for PSHDL input. It generates
+ *     output suitable for implementation or simulation of it.
+ *
+ *     Copyright (C) 2014 Karsten Becker (feedback (at) pshdl (dot) org)
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     This License does not grant permission to use the trade names, trademarks,
+ *     service marks, or product names of the Licensor, except as required for
+ *     reasonable and customary use in describing the origin of the Work.
+ *
+ * Contributors:
+ *     Karsten Becker - initial API and implementation
+ ******************************************************************************/
+package org.pshdl.generator.vhdl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import org.pshdl.model.HDLInterface;
+import org.pshdl.model.utils.HDLQualifiedName;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * A persistent cache for the interfaces of imported VHDL files. Every entry is
+ * a file in the cache directory that is named after the SHA-256 hash of the
+ * VHDL contents, the target package and the versions of the importer and
+ * the {@link VHDLInterfaceCodec}. Entries therefore never need to be
+ * invalidated, changed files simply map to a different entry.
+ *
+ * @author Karsten Becker
+ *
+ */
+public class VHDLImportCache {
+
+	private static final String SUFFIX = ".vhdlif";
+
+	private final File directory;
+
+	public VHDLImportCache(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Computes the key under which the interfaces of a file are stored
+	 *
+	 * @param pkg
+	 *            the package into which the file is imported
+	 * @param contents
+	 *            the contents of the VHDL file
+	 * @return a hex encoded hash
+	 */
+	public static String keyOf(HDLQualifiedName pkg, ByteBuffer contents) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update((VHDLImporter.VERSION + ":" + VHDLInterfaceCodec.VERSION + ":" + pkg + ":").getBytes(StandardCharsets.UTF_8));
+			digest.update(contents.duplicate());
+			return BaseEncoding.base16().lowerCase().encode(digest.digest());
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	/**
+	 * Looks up the interfaces that are stored under the given key
+	 *
+	 * @return the interfaces, or <code>null</code> if there is no usable
+	 *         entry
+	 */
+	public List<HDLInterface> get(String key) {
+		final File entry = new File(directory, key + SUFFIX);
+		if (!entry.isFile())
+			return null;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+			return VHDLInterfaceCodec.read(in);
+		} catch (final IOException | RuntimeException e) {
+			// A damaged entry is treated like a miss and will be overwritten
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the interfaces under the given key. The entry is written to a
+	 * temporary file first, so concurrent readers never see partial entries.
+	 * Interfaces that can not be encoded are not stored.
+	 */
+	public void put(String key, List<HDLInterface> interfaces) {
+		if (!directory.isDirectory() && !directory.mkdirs())
+			return;
+		File tmp = null;
+		try {
+			tmp = File.createTempFile(key, ".tmp", directory);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+				VHDLInterfaceCodec.write(out, interfaces);
+			}
+			final File entry = new File(directory, key + SUFFIX);
+			try {
+				Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (final AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			tmp = null;
+		} catch (final IOException e) {
+			// The cache is only an optimization, the interfaces are simply
+			// imported again next time
+		} finally {
+			if (tmp != null) {
+				tmp.delete();
+			}
+		}
+	}
+}
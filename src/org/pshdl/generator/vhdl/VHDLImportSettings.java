@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * PSHDL is a library and (trans-)compiler for PSHDL input. It generates
+ *     output suitable for implementation or simulation of it.
+ *
+ *     Copyright (C) 2014 Karsten Becker (feedback (at) pshdl (dot) org)
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     This License does not grant permission to use the trade names, trademarks,
+ *     service marks, or product names of the Licensor, except as required for
+ *     reasonable and customary use in describing the origin of the Work.
+ *
+ * Contributors:
+ *     Karsten Becker - initial API and implementation
+ ******************************************************************************/
+package org.pshdl.generator.vhdl;
+
+import java.io.File;
+
+/**
+ * Options that influence how VHDL files are imported by {@link VHDLImporter}
+ *
+ * @author Karsten Becker
+ *
+ */
+public class VHDLImportSettings {
+
+	/**
+	 * The directory in which the imported interfaces are cached, or
+	 * <code>null</code> if no cache should be used. Entries are keyed by the
+	 * hash of the file contents, so a file that did not change does not need
+	 * to be parsed again.
+	 */
+	public File cacheDirectory = null;
+
+	/**
+	 * If <code>true</code>, only the entity and package declarations of a
+	 * file are parsed, each together with its context clause. Architectures,
+	 * package bodies and configurations are skipped by the
+	 * {@link VHDLHeaderScanner}, which saves most of the parsing for large
+	 * files. If a declaration can not be parsed on its own, the whole file is
+	 * parsed instead.
+	 */
+	public boolean fastScan = false;
+
+	/**
+	 * If <code>true</code>, the complete parse tree of every imported file is
+	 * kept for the lifetime of the library. Otherwise only the entity and
+	 * package declarations are kept, as those are all that other files can
+	 * refer to.
+	 */
+	public boolean retainBodies = false;
+
+	public VHDLImportSettings() {
+	}
+
+	public VHDLImportSettings(VHDLImportSettings other) {
+		this.cacheDirectory = other.cacheDirectory;
+		this.fastScan = other.fastScan;
+		this.retainBodies = other.retainBodies;
+	}
+
+}
@@ -0,0 +1,275 @@
+/*******************************************************************************
+ * PSHDL is a library and (trans-)compiler for PSHDL input. It generates
+ *     output suitable for implementation or simulation of it.
+ *
+ *     Copyright (C) 2014 Karsten Becker (feedback (at) pshdl (dot) org)
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     This License does not grant permission to use the trade names, trademarks,
+ *     service marks, or product names of the Licensor, except as required for
+ *     reasonable and customary use in describing the origin of the Work.
+ *
+ * Contributors:
+ *     Karsten Becker - initial API and implementation
+ ******************************************************************************/
+package org.pshdl.generator.vhdl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.pshdl.model.HDLInterface;
+import org.pshdl.model.utils.HDLLibrary;
+import org.pshdl.model.utils.HDLQualifiedName;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import de.upb.hni.vmagic.parser.VhdlParserExceptionThrower;
+
+/**
+ * A snapshot of the interfaces that have been imported from a set of VHDL
+ * files. Libraries that are shared by several projects can be imported once
+ * with {@link #main(String[])} and then be loaded into an {@link HDLLibrary}
+ * without parsing any VHDL entity.
+ * <p>
+ * The vMAGIC scopes can not be serialized, instead the source of every entity
+ * and package declaration, including its context clause, is stored. Loading
+ * the snapshot does not parse them, they are only parsed once a VHDL file
+ * that is imported later refers to them.
+ *
+ * @author Karsten Becker
+ *
+ */
+public class VHDLImportSnapshot {
+
+	private static final int MAGIC = 0x5053534E;
+	private static final int VERSION = 2;
+
+	private static final class Declaration {
+		/**
+		 * The lower case name of the entity or package
+		 */
+		public final String name;
+		/**
+		 * The source of the declaration, including its context clause
+		 */
+		public final byte[] source;
+
+		public Declaration(String name, byte[] source) {
+			this.name = name;
+			this.source = source;
+		}
+	}
+
+	private static final class ImportedSource {
+		public final String src;
+		public final List<HDLInterface> interfaces;
+		public final List<Declaration> declarations = Lists.newArrayList();
+
+		public ImportedSource(String src, List<HDLInterface> interfaces) {
+			this.src = src;
+			this.interfaces = interfaces;
+		}
+	}
+
+	private final List<ImportedSource> sources = Lists.newArrayList();
+
+	/**
+	 * Imports the given VHDL files into a new library and writes the snapshot
+	 *
+	 * @param snapshot
+	 *            the file to which the snapshot is written
+	 * @param vhdlFiles
+	 *            the files to import, in the order in which they need to be
+	 *            imported
+	 * @param settings
+	 *            the settings for the import
+	 * @throws IOException
+	 *             if a file can not be read or the snapshot not be written
+	 */
+	public static void write(File snapshot, List<File> vhdlFiles, VHDLImportSettings settings) throws IOException {
+		final VHDLImportSnapshot res = new VHDLImportSnapshot();
+		final HDLLibrary lib = new HDLLibrary();
+		final HDLQualifiedName pkg = HDLQualifiedName.create("VHDL", "work");
+		for (final File file : vhdlFiles) {
+			final String src = file.getAbsolutePath();
+			final ImportedSource imported = new ImportedSource(src, VHDLImporter.importFile(pkg, file, lib, src, settings));
+			final VHDLHeaderScanner scanner = VHDLHeaderScanner.declarations(VhdlParserExceptionThrower.map(file));
+			ByteBuffer declaration;
+			while ((declaration = scanner.nextDeclaration()) != null) {
+				if (scanner.getDeclarationName() != null) {
+					final byte[] source = new byte[declaration.remaining()];
+					declaration.get(source);
+					imported.declarations.add(new Declaration(scanner.getDeclarationName(), source));
+				}
+			}
+			res.sources.add(imported);
+		}
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(snapshot)))) {
+			res.write(out);
+		}
+	}
+
+	/**
+	 * Adds the interfaces of a snapshot to a library. The entity and package
+	 * declarations of the snapshot are added with
+	 * {@link VHDLImporter#addPending(HDLLibrary, ByteBuffer, String, List)},
+	 * so nothing is parsed.
+	 *
+	 * @param snapshot
+	 *            the snapshot file
+	 * @param lib
+	 *            the library to which the interfaces are added
+	 * @return the interfaces of the snapshot
+	 * @throws IOException
+	 *             if the snapshot can not be read or was written by an
+	 *             incompatible version
+	 */
+	public static List<HDLInterface> load(File snapshot, HDLLibrary lib) throws IOException {
+		final VHDLImportSnapshot res = new VHDLImportSnapshot();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)))) {
+			res.read(in);
+		}
+		final List<HDLInterface> interfaces = Lists.newArrayList();
+		for (final ImportedSource source : res.sources) {
+			for (final Declaration declaration : source.declarations) {
+				VHDLImporter.addPending(lib, ByteBuffer.wrap(declaration.source), source.src, Collections.singletonList(declaration.name));
+			}
+			for (final HDLInterface hif : source.interfaces) {
+				lib.addInterface(hif, source.src);
+			}
+			interfaces.addAll(source.interfaces);
+		}
+		return interfaces;
+	}
+
+	private void write(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(VHDLImporter.VERSION);
+		out.writeInt(sources.size());
+		for (final ImportedSource source : sources) {
+			out.writeUTF(source.src);
+			VHDLInterfaceCodec.write(out, source.interfaces);
+			out.writeInt(source.declarations.size());
+			for (final Declaration declaration : source.declarations) {
+				out.writeUTF(declaration.name);
+				out.writeInt(declaration.source.length);
+				out.write(declaration.source);
+			}
+		}
+	}
+
+	private void read(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a VHDL import snapshot");
+		if (in.readInt() != VERSION)
+			throw new IOException("Unsupported VHDL import snapshot version");
+		if (in.readInt() != VHDLImporter.VERSION)
+			throw new IOException("The VHDL import snapshot was created by a different version of the importer");
+		final int sourceCount = in.readInt();
+		for (int i = 0; i < sourceCount; i++) {
+			final String src = in.readUTF();
+			final ImportedSource imported = new ImportedSource(src, VHDLInterfaceCodec.read(in));
+			final int declarationCount = in.readInt();
+			for (int j = 0; j < declarationCount; j++) {
+				final String name = in.readUTF();
+				final byte[] source = new byte[in.readInt()];
+				in.readFully(source);
+				imported.declarations.add(new Declaration(name, source));
+			}
+			sources.add(imported);
+		}
+	}
+
+	/**
+	 * Creates a snapshot. The first argument is the snapshot file, all other
+	 * arguments are VHDL files or directories, which are searched recursively
+	 * for VHDL files.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: VHDLImportSnapshot <snapshot> <vhdl files or directories>...");
+			return;
+		}
+		final List<File> files = Lists.newArrayList();
+		for (int i = 1; i < args.length; i++) {
+			final File file = new File(args[i]);
+			if (file.isDirectory()) {
+				final Map<String, File> found = Maps.newTreeMap();
+				VHDLLibraryIndex.collectFiles(file, "", found);
+				files.addAll(found.values());
+			} else {
+				files.add(file);
+			}
+		}
+		final VHDLImportSettings settings = new VHDLImportSettings();
+		settings.fastScan = true;
+		write(new File(args[0]), orderByDependencies(files), settings);
+	}
+
+	/**
+	 * Orders the files so that every file comes after the files that declare
+	 * the packages it uses and the entities it instantiates. Otherwise the
+	 * order of the files is kept.
+	 */
+	private static List<File> orderByDependencies(List<File> files) throws IOException {
+		final Map<String, File> declaring = Maps.newHashMap();
+		final Map<File, List<String>> used = Maps.newHashMap();
+		for (final File file : files) {
+			final byte[] contents = Files.readAllBytes(file.toPath());
+			// Entities and packages share the namespace of the work library
+			final List<String> declarations = Lists.newArrayList();
+			VHDLHeaderScanner.scanDeclarations(contents, declarations, declarations);
+			for (final String name : declarations) {
+				declaring.put(name, file);
+			}
+			final List<String> references = Lists.newArrayList();
+			VHDLHeaderScanner.scanReferences(contents, references, references);
+			used.put(file, references);
+		}
+		final Set<File> added = Sets.newHashSet();
+		final List<File> res = Lists.newArrayList();
+		for (final File file : files) {
+			addOrdered(file, declaring, used, added, res);
+		}
+		return res;
+	}
+
+	private static void addOrdered(File file, Map<String, File> declaring, Map<File, List<String>> used, Set<File> added, List<File> res) {
+		if (!added.add(file))
+			return;
+		for (final String name : used.get(file)) {
+			final File dependency = declaring.get(name);
+			if (dependency != null) {
+				addOrdered(dependency, declaring, used, added, res);
+			}
+		}
+		res.add(file);
+	}
+}
@@ -27,14 +27,19 @@
 package org.pshdl.generator.vhdl;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.antlr.runtime.RecognitionException;
 import org.pshdl.generator.vhdl.VHDLOutputValidator.VHDLErrorCode;
@@ -62,6 +67,8 @@ import org.pshdl.model.validation.Problem;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
 
 import de.upb.hni.vmagic.DiscreteRange;
 import de.upb.hni.vmagic.LibraryDeclarativeRegion;
@@ -81,6 +88,7 @@ import de.upb.hni.vmagic.expression.Parentheses;
 import de.upb.hni.vmagic.libraryunit.Entity;
 import de.upb.hni.vmagic.libraryunit.LibraryUnit;
 import de.upb.hni.vmagic.libraryunit.PackageDeclaration;
+import de.upb.hni.vmagic.libraryunit.UseClause;
 import de.upb.hni.vmagic.literal.BinaryLiteral;
 import de.upb.hni.vmagic.literal.CharacterLiteral;
 import de.upb.hni.vmagic.literal.DecimalLiteral;
@@ -90,6 +98,7 @@ import de.upb.hni.vmagic.object.Constant;
 import de.upb.hni.vmagic.object.Signal;
 import de.upb.hni.vmagic.object.VhdlObjectProvider;
 import de.upb.hni.vmagic.output.VhdlOutput;
+import de.upb.hni.vmagic.parser.ByteBufferCharStream;
 import de.upb.hni.vmagic.parser.ParseError;
 import de.upb.hni.vmagic.parser.VhdlParserException;
 import de.upb.hni.vmagic.parser.VhdlParserExceptionThrower;
@@ -106,42 +115,355 @@ import de.upb.hni.vmagic.type.UnconstrainedArray;
 
 @SuppressWarnings("rawtypes")
 public class VHDLImporter {
+	/**
+	 * Needs to be incremented whenever the interfaces created by the importer
+	 * change, so that cached imports are no longer used
+	 */
+	public static final int VERSION = 3;
+
+	/**
+	 * A file whose interfaces are known without it having been parsed, such
+	 * as a cached file. Its declarations are only parsed into the work scope
+	 * once another file refers to one of them.
+	 */
+	private static class PendingFile {
+		public final ByteBuffer contents;
+		public final String src;
+		/**
+		 * The lower case names of the entities and packages that the file
+		 * declares
+		 */
+		public final List<String> declarations;
+		public final AtomicBoolean registered = new AtomicBoolean();
+
+		public PendingFile(ByteBuffer contents, String src, List<String> declarations) {
+			this.contents = contents;
+			this.src = src;
+			this.declarations = declarations;
+		}
+	}
+
 	private static class Scopes {
 		public final RootDeclarativeRegion rootScope;
 		public final LibraryDeclarativeRegion workScope;
+		/**
+		 * The files whose declarations are not yet in the work scope, by the
+		 * lower case names of their entities and packages
+		 */
+		public final ConcurrentMap<String, PendingFile> pending;
+		/**
+		 * The widths of index ranges with literal bounds, keyed by their
+		 * bounds. Most ports use the same few ranges, so each is only
+		 * converted once per import.
+		 */
+		public final Map<String, HDLExpression> widths = Maps.newHashMap();
 
-		public Scopes(RootDeclarativeRegion rootScope, LibraryDeclarativeRegion workScope) {
+		public Scopes(RootDeclarativeRegion rootScope, LibraryDeclarativeRegion workScope, ConcurrentMap<String, PendingFile> pending) {
 			super();
 			this.rootScope = rootScope;
 			this.workScope = workScope;
+			this.pending = pending;
+		}
+
+		/**
+		 * Returns scopes for a single import, which share the declarative
+		 * regions with these, but start with an empty width cache.
+		 */
+		public Scopes forImport() {
+			return new Scopes(rootScope, workScope, pending);
+		}
+
+		/**
+		 * Forgets the pending declarations of an earlier import of src
+		 */
+		public void dropPending(String src) {
+			final Iterator<PendingFile> iterator = pending.values().iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next().src.equals(src)) {
+					iterator.remove();
+				}
+			}
 		}
 	}
 
-	@SuppressWarnings("unchecked")
+	private static class ImportResult {
+		public final List<HDLInterface> interfaces = Lists.newLinkedList();
+		/**
+		 * <code>true</code> if the interfaces only depend on the file itself
+		 * and the standard libraries. Such a file does not declare packages
+		 * and only uses packages of the <code>ieee</code> and
+		 * <code>std</code> libraries.
+		 */
+		public boolean selfContained = true;
+	}
+
+	/**
+	 * Imports the entities of a VHDL file as {@link HDLInterface}. The whole
+	 * stream is read onto the heap, use
+	 * {@link #importFile(HDLQualifiedName, File, HDLLibrary, String, VHDLImportSettings)}
+	 * for large files.
+	 */
 	public static List<HDLInterface> importFile(HDLQualifiedName pkg, InputStream is, HDLLibrary lib, String src) throws IOException, HDLProblemException {
+		return doImport(pkg, ByteBuffer.wrap(ByteStreams.toByteArray(is)), lib, src, false).interfaces;
+	}
+
+	/**
+	 * Imports the entities of a VHDL file as {@link HDLInterface}. When a
+	 * cache directory is configured, files that have been imported before are
+	 * not parsed again. Only files that neither declare nor use packages
+	 * other than those of the standard libraries, and that produced no
+	 * warnings are cached, as their interfaces could otherwise depend on other
+	 * files, or the interfaces of other files on them. A cached file is not
+	 * parsed at all, it is added with
+	 * {@link #addPending(HDLLibrary, ByteBuffer, String, List)} instead.
+	 * With {@link VHDLImportSettings#fastScan}, only the headers of the file
+	 * are parsed.
+	 * <p>
+	 * The whole stream is read onto the heap. Large files, such as netlists,
+	 * should be imported with
+	 * {@link #importFile(HDLQualifiedName, File, HDLLibrary, String, VHDLImportSettings)}
+	 * instead, which maps the file into memory.
+	 *
+	 * @param pkg
+	 *            the package into which the interfaces are imported
+	 * @param is
+	 *            the contents of the VHDL file
+	 * @param lib
+	 *            the library to which the interfaces are added
+	 * @param src
+	 *            the src id under which the interfaces are registered
+	 * @param settings
+	 *            the import settings
+	 * @return the imported interfaces
+	 */
+	public static List<HDLInterface> importFile(HDLQualifiedName pkg, InputStream is, HDLLibrary lib, String src, VHDLImportSettings settings) throws IOException,
+			HDLProblemException {
+		return importBuffer(pkg, ByteBuffer.wrap(ByteStreams.toByteArray(is)), lib, src, settings);
+	}
+
+	/**
+	 * Imports the entities of a VHDL file as {@link HDLInterface}. The file is
+	 * mapped into memory, so that large files, such as netlists, can be
+	 * imported without reading them onto the heap.
+	 *
+	 * @see #importFile(HDLQualifiedName, InputStream, HDLLibrary, String,
+	 *      VHDLImportSettings)
+	 */
+	public static List<HDLInterface> importFile(HDLQualifiedName pkg, File file, HDLLibrary lib, String src, VHDLImportSettings settings) throws IOException,
+			HDLProblemException {
+		return importBuffer(pkg, VhdlParserExceptionThrower.map(file), lib, src, settings);
+	}
+
+	private static List<HDLInterface> importBuffer(HDLQualifiedName pkg, ByteBuffer contents, HDLLibrary lib, String src, VHDLImportSettings settings)
+			throws IOException, HDLProblemException {
 		final Scopes scopes = getScopes(lib);
-		final List<HDLInterface> res = Lists.newLinkedList();
-		final VhdlParserSettings vhdlParserSettings = new VhdlParserSettings();
-		vhdlParserSettings.setPrintErrors(false);
-		VhdlFile file;
+		scopes.dropPending(src);
+		if (settings.cacheDirectory == null)
+			return doImport(pkg, contents, lib, src, settings).interfaces;
+		final VHDLImportCache cache = new VHDLImportCache(settings.cacheDirectory);
+		final String key = VHDLImportCache.keyOf(pkg, contents);
+		final List<HDLInterface> cached = cache.get(key);
+		if (cached != null) {
+			// Cached files do not declare packages
+			final List<String> entities = Lists.newArrayListWithCapacity(cached.size());
+			for (final HDLInterface hif : cached) {
+				entities.add(new HDLQualifiedName(hif.getName()).getLastSegment().toLowerCase());
+			}
+			addPending(scopes, contents, src, entities);
+			for (final HDLInterface hif : cached) {
+				lib.addInterface(hif, src);
+			}
+			return cached;
+		}
+		final ImportResult result = doImport(pkg, contents, lib, src, settings);
+		if (result.selfContained) {
+			cache.put(key, result.interfaces);
+		}
+		return result.interfaces;
+	}
+
+	/**
+	 * Makes the entity and package declarations of a VHDL source known to the
+	 * library without parsing them. They are parsed into the work scope once
+	 * another file that is imported into the library refers to one of them,
+	 * until then the contents are kept. The interfaces of the source need to
+	 * be added to the library separately.
+	 *
+	 * @param lib
+	 *            the library into which the source has been imported
+	 * @param contents
+	 *            the contents of the source
+	 * @param src
+	 *            the src id of the source
+	 * @param declarations
+	 *            the lower case names of the entities and packages that the
+	 *            source declares
+	 */
+	public static void addPending(HDLLibrary lib, ByteBuffer contents, String src, List<String> declarations) {
+		addPending(getScopes(lib), contents, src, declarations);
+	}
+
+	private static void addPending(Scopes scopes, ByteBuffer contents, String src, List<String> declarations) {
+		final PendingFile pending = new PendingFile(contents, src, declarations);
+		for (final String name : declarations) {
+			scopes.pending.put(name, pending);
+		}
+	}
+
+	/**
+	 * Parses the declarations of the pending files that the contents refer to
+	 * into the work scope
+	 */
+	private static void registerReferenced(ByteBuffer contents, Scopes scopes) throws IOException, HDLProblemException {
+		if (scopes.pending.isEmpty())
+			return;
+		// Entities and packages share the namespace of the work library
+		final List<String> references = Lists.newArrayList();
+		VHDLHeaderScanner.scanReferences(contents.duplicate(), references, references);
+		for (final String name : references) {
+			final PendingFile pending = scopes.pending.get(name);
+			if (pending != null) {
+				registerDeclarations(pending, scopes);
+			}
+		}
+	}
+
+	/**
+	 * Parses the declarations of a pending file into the work scope, so that
+	 * other files can use them without the whole file being parsed
+	 */
+	private static void registerDeclarations(PendingFile pending, Scopes scopes) throws IOException, HDLProblemException {
+		if (!pending.registered.compareAndSet(false, true))
+			return;
+		for (final String name : pending.declarations) {
+			scopes.pending.remove(name, pending);
+		}
+		final List<VhdlFile> files = Lists.newArrayList();
 		try {
-			file = VhdlParserExceptionThrower.parseStream(is, vhdlParserSettings, scopes.rootScope, scopes.workScope);
-			final List<ParseError> parseErrors = VhdlParserExceptionThrower.getParseErrors(file);
-			if (!parseErrors.isEmpty()) {
-				final List<Problem> problems = Lists.newArrayList();
-				for (final ParseError parseError : parseErrors) {
-					final PositionInformation pos = parseError.getPosition();
-					final SourcePosition begin = pos.getBegin();
-					final int length = pos.getEnd().getIndex() - begin.getIndex();
-					problems.add(new Problem(VHDLErrorCode.PARSE_ERROR, parseError.getMessage(), begin.getLine(), begin.getColumn(), length, begin.getIndex()));
-				}
-				throw new HDLProblemException(problems.toArray(new Problem[problems.size()]));
+			final VHDLHeaderScanner scanner = VHDLHeaderScanner.declarations(pending.contents.duplicate());
+			ByteBuffer declaration;
+			while ((declaration = scanner.nextDeclaration()) != null) {
+				// Later declarations of the file can use this one
+				final VhdlFile declarations = declarationsOf(parse(declaration, pending.src, scopes));
+				scopes.workScope.getFiles().add(declarations);
+				files.add(declarations);
+			}
+		} catch (final HDLProblemException e) {
+			// The scanner might have split something that belongs together,
+			// try again with the whole file
+			scopes.workScope.getFiles().removeAll(files);
+			scopes.workScope.getFiles().add(declarationsOf(parse(pending.contents.duplicate(), pending.src, scopes)));
+		}
+	}
+
+	/**
+	 * Receives the interfaces of a streaming import
+	 */
+	public interface InterfaceListener {
+		void imported(HDLInterface hif);
+	}
+
+	/**
+	 * Imports the entities of a VHDL file one declaration at a time. The
+	 * {@link VHDLHeaderScanner} splits the file into entity and package
+	 * declarations, which are parsed on their own together with their context
+	 * clause. Architectures and package bodies are never parsed, and only the
+	 * tokens of one declaration are held in memory at a time. This is intended
+	 * for very large files, such as netlists, of which only the ports are
+	 * needed. Positions in reported problems are relative to the start of the
+	 * context clause of the declaration.
+	 *
+	 * @param pkg
+	 *            the package into which the interfaces are imported
+	 * @param file
+	 *            the VHDL file
+	 * @param lib
+	 *            the library to which the interfaces are added
+	 * @param src
+	 *            the src id under which the interfaces are registered
+	 * @param listener
+	 *            receives each interface as soon as its entity has been
+	 *            imported
+	 */
+	public static void importStreaming(HDLQualifiedName pkg, File file, HDLLibrary lib, String src, InterfaceListener listener) throws IOException,
+			HDLProblemException {
+		final VHDLHeaderScanner scanner = VHDLHeaderScanner.declarations(VhdlParserExceptionThrower.map(file));
+		ByteBuffer declaration;
+		while ((declaration = scanner.nextDeclaration()) != null) {
+			final ImportResult result = doImport(pkg, declaration, lib, src, false);
+			for (final HDLInterface hif : result.interfaces) {
+				listener.imported(hif);
 			}
-		} catch (final RecognitionException e) {
-			throw new HDLProblemException(new Problem(VHDLErrorCode.PARSE_ERROR, e.getMessage(), e.line, e.charPositionInLine, e.token.getText().length(), -1));
 		}
+	}
+
+	private static ImportResult doImport(HDLQualifiedName pkg, ByteBuffer contents, HDLLibrary lib, String src, VHDLImportSettings settings) throws IOException,
+			HDLProblemException {
+		if (!settings.fastScan)
+			return doImport(pkg, contents, lib, src, settings.retainBodies);
+		final Scopes scopes = getScopes(lib).forImport();
+		final List<VhdlFile> files = Lists.newArrayList();
+		final List<VhdlFile> declared = Lists.newArrayList();
+		try {
+			final VHDLHeaderScanner scanner = VHDLHeaderScanner.declarations(contents.duplicate());
+			ByteBuffer declaration;
+			while ((declaration = scanner.nextDeclaration()) != null) {
+				final VhdlFile file = parse(declaration, src, scopes);
+				// Later declarations of the file can use this one
+				final VhdlFile declarations = declarationsOf(file);
+				scopes.workScope.getFiles().add(declarations);
+				declared.add(declarations);
+				files.add(file);
+			}
+		} catch (final HDLProblemException e) {
+			// The scanner might have split something that belongs together,
+			// try again with the whole file
+			scopes.workScope.getFiles().removeAll(declared);
+			try {
+				return doImport(pkg, contents, lib, src, settings.retainBodies);
+			} catch (final HDLProblemException whole) {
+				whole.addSuppressed(e);
+				throw whole;
+			}
+		}
+		final ImportResult result = new ImportResult();
+		for (final VhdlFile file : files) {
+			convert(pkg, file, lib, src, scopes, result);
+		}
+		return result;
+	}
+
+	private static ImportResult doImport(HDLQualifiedName pkg, ByteBuffer contents, HDLLibrary lib, String src, boolean retainBodies) throws IOException,
+			HDLProblemException {
+		final Scopes scopes = getScopes(lib).forImport();
+		final ImportResult result = new ImportResult();
+		final VhdlFile file = parse(contents, src, scopes);
+		convert(pkg, file, lib, src, scopes, result);
+		if (retainBodies) {
+			scopes.workScope.getFiles().add(file);
+		} else {
+			final VhdlFile declarations = declarationsOf(file);
+			if (!declarations.getElements().isEmpty()) {
+				scopes.workScope.getFiles().add(declarations);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Converts the entities of a parsed file and adds them to the library
+	 */
+	@SuppressWarnings("unchecked")
+	private static void convert(HDLQualifiedName pkg, VhdlFile file, HDLLibrary lib, String src, Scopes scopes, ImportResult result) {
+		final List<HDLInterface> res = result.interfaces;
 		final List<LibraryUnit> list = file.getElements();
 		for (final LibraryUnit unit : list) {
+			if (unit instanceof PackageDeclaration) {
+				result.selfContained = false;
+			}
+			if ((unit instanceof UseClause) && !usesStandardLibraries((UseClause) unit)) {
+				result.selfContained = false;
+			}
 			if (unit instanceof Entity) {
 				final Entity entity = (Entity) unit;
 				final String id = entity.getIdentifier();
@@ -181,12 +503,90 @@ public class VHDLImporter {
 						}
 					}
 				}
+				final HDLInterface unfrozen = vInterface;
 				vInterface = vInterface.copyDeepFrozen(null);
 				vInterface.addMeta(SourceInfo.COMMENT, comments);
+				copyVariableComments(unfrozen, vInterface);
+				if (!comments.isEmpty()) {
+					result.selfContained = false;
+				}
 				res.add(vInterface);
 				lib.addInterface(vInterface, src);
 			}
-			getScopes(lib).workScope.getFiles().add(file);
+		}
+	}
+
+	/**
+	 * Adds the comments of the variables of an interface to its frozen copy
+	 */
+	private static void copyVariableComments(HDLInterface from, HDLInterface to) {
+		final List<HDLVariableDeclaration> fromPorts = from.getPorts();
+		final List<HDLVariableDeclaration> toPorts = to.getPorts();
+		for (int i = 0; i < fromPorts.size(); i++) {
+			final List<HDLVariable> fromVars = fromPorts.get(i).getVariables();
+			final List<HDLVariable> toVars = toPorts.get(i).getVariables();
+			for (int j = 0; j < fromVars.size(); j++) {
+				final List<String> comments = fromVars.get(j).getMeta(SourceInfo.COMMENT);
+				if (comments != null) {
+					toVars.get(j).addMeta(SourceInfo.COMMENT, comments);
+				}
+			}
+		}
+	}
+
+	private static VhdlFile parse(ByteBuffer contents, String src, Scopes scopes) throws IOException, HDLProblemException {
+		registerReferenced(contents, scopes);
+		final VhdlParserSettings vhdlParserSettings = new VhdlParserSettings();
+		vhdlParserSettings.setPrintErrors(false);
+		try {
+			final VhdlFile file = VhdlParserExceptionThrower.parseBuffer(contents, src, vhdlParserSettings, scopes.rootScope, scopes.workScope);
+			final List<ParseError> parseErrors = VhdlParserExceptionThrower.getParseErrors(file);
+			if (!parseErrors.isEmpty()) {
+				// The indices of the parser are byte offsets, problems use
+				// character offsets
+				final ByteBufferCharStream chars = new ByteBufferCharStream(contents, src);
+				final List<Problem> problems = Lists.newArrayList();
+				for (final ParseError parseError : parseErrors) {
+					final PositionInformation pos = parseError.getPosition();
+					final SourcePosition begin = pos.getBegin();
+					final int offset = chars.characterIndex(begin.getIndex());
+					final int length = chars.characterIndex(pos.getEnd().getIndex()) - offset;
+					problems.add(new Problem(VHDLErrorCode.PARSE_ERROR, parseError.getMessage(), begin.getLine(), begin.getColumn(), length, offset));
+				}
+				throw new HDLProblemException(problems.toArray(new Problem[problems.size()]));
+			}
+			return file;
+		} catch (final RecognitionException e) {
+			throw new HDLProblemException(new Problem(VHDLErrorCode.PARSE_ERROR, e.getMessage(), e.line, e.charPositionInLine, e.token.getText().length(), -1));
+		}
+	}
+
+	private static boolean usesStandardLibraries(UseClause clause) {
+		for (final String declaration : clause.getDeclarations()) {
+			final String library = declaration.substring(0, declaration.indexOf('.') + 1).toLowerCase();
+			if (!"ieee.".equals(library) && !"std.".equals(library))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Only entities and packages can be referenced by other files. Keeping
+	 * just those in the work scope allows the architectures and package
+	 * bodies of an imported file to be garbage collected.
+	 *
+	 * @param file
+	 *            the parsed file
+	 * @return a file that contains the entity and package declarations of
+	 *         file
+	 */
+	private static VhdlFile declarationsOf(VhdlFile file) {
+		final VhdlFile res = new VhdlFile();
+		final List<LibraryUnit> units = file.getElements();
+		for (final LibraryUnit unit : units) {
+			if ((unit instanceof Entity) || (unit instanceof PackageDeclaration)) {
+				res.getElements().add(unit);
+			}
 		}
 		return res;
 	}
@@ -200,7 +600,7 @@ public class VHDLImporter {
 		final RootDeclarativeRegion rootScope = new RootDeclarativeRegion();
 		final LibraryDeclarativeRegion workScope = new LibraryDeclarativeRegion("work");
 		rootScope.getLibraries().add(workScope);
-		scopes = new Scopes(rootScope, workScope);
+		scopes = new Scopes(rootScope, workScope, new ConcurrentHashMap<String, PendingFile>());
 		lib.addMeta(SCOPES, scopes);
 		return scopes;
 	}
@@ -210,7 +610,7 @@ public class VHDLImporter {
 		if (left instanceof IndexSubtypeIndication) {
 			final IndexSubtypeIndication isi = (IndexSubtypeIndication) left;
 			final Range dr = (Range) isi.getRanges().get(0);
-			final Optional<? extends HDLExpression> convertRange = convertRange(dr);
+			final Optional<? extends HDLExpression> convertRange = convertRange(dr, scopes);
 			if (!convertRange.isPresent())
 				return Optional.absent();
 			return getVariable(defaultValue, isi.getBaseType(), direction, qfn, convertRange.get(), dimensions, scopes);
@@ -230,7 +630,7 @@ public class VHDLImporter {
 			return createVar(defaultValue, direction, HDLPrimitiveType.NATURAL, qfn, width, dimensions);
 		if (left instanceof RangeSubtypeIndication) {
 			final RangeSubtypeIndication it = (RangeSubtypeIndication) left;
-			final Optional<HDLVariableDeclaration> var = getVariable(defaultValue, it.getBaseType(), direction, qfn, width, dimensions, scopes);
+			final Optional<HDLVariableDeclaration> var = getVariable(defaultValue, it.getBaseType(), direction, qfn, width, dimensions);
 			if (var.isPresent()) {
 				HDLVariableDeclaration subVar = var.get();
 				final RangeProvider rangeProvider = it.getRange();
@@ -257,7 +657,7 @@ public class VHDLImporter {
 			final List<DiscreteRange> ranges = ca.getIndexRanges();
 			scopes.workScope.getScope().resolve(ca.getIdentifier());
 			for (final DiscreteRange discreteRange : ranges) {
-				final Optional<? extends HDLExpression> convertRange = convertRange((Range) discreteRange);
+				final Optional<? extends HDLExpression> convertRange = convertRange((Range) discreteRange, scopes);
 				if (!convertRange.isPresent())
 					return Optional.absent();
 				dimensions.add(convertRange.get());
@@ -303,6 +703,22 @@ public class VHDLImporter {
 		return null;
 	}
 
+	private static Optional<? extends HDLExpression> convertRange(Range dr, Scopes scopes) {
+		// Only literal bounds are cached, names such as generics or package
+		// constants can mean something else in another entity
+		if (!(dr.getFrom() instanceof DecimalLiteral) || !(dr.getTo() instanceof DecimalLiteral))
+			return convertRange(dr);
+		final String key = ((DecimalLiteral) dr.getFrom()).getValue() + ' ' + dr.getDirection() + ' ' + ((DecimalLiteral) dr.getTo()).getValue();
+		final HDLExpression width = scopes.widths.get(key);
+		if (width != null)
+			return Optional.of(width);
+		final Optional<? extends HDLExpression> converted = convertRange(dr);
+		if (converted.isPresent()) {
+			scopes.widths.put(key, converted.get());
+		}
+		return converted;
+	}
+
 	private static Optional<? extends HDLExpression> convertRange(Range dr) {
 		final Optional<? extends HDLExpression> from = getExpression(dr.getFrom(), false);
 		if (!from.isPresent())
@@ -323,16 +739,20 @@ public class VHDLImporter {
 			ArrayList<HDLExpression> dimensions) {
 		final HDLPrimitive p = new HDLPrimitive().setType(pt).setWidth(width);
 		HDLExpression hDefault = null;
-		final HDLVariable variable = new HDLVariable().setName(name.getLastSegment()).setDimensions(dimensions);
+		String comment = null;
 		if (defaultValue != null) {
 			final Optional<? extends HDLExpression> optional = getExpression(defaultValue, pt == HDLPrimitiveType.STRING);
 			if (optional.isPresent()) {
 				hDefault = optional.get();
 			} else {
-				variable.addMeta(SourceInfo.COMMENT, Arrays.asList("Failed to convert default value of:" + VhdlOutput.toVhdlString(defaultValue)));
+				comment = "Failed to convert default value of:" + VhdlOutput.toVhdlString(defaultValue);
 			}
 		}
-		return Optional.of(new HDLVariableDeclaration().setDirection(direction).setType(p).addVariables(variable.setDefaultValue(hDefault)));
+		final HDLVariable variable = new HDLVariable().setName(name.getLastSegment()).setDimensions(dimensions).setDefaultValue(hDefault);
+		if (comment != null) {
+			variable.addMeta(SourceInfo.COMMENT, Arrays.asList(comment));
+		}
+		return Optional.of(new HDLVariableDeclaration().setDirection(direction).setType(p).addVariables(variable));
 	}
 
 	private static HDLExpression subThenPlus1(HDLExpression from, HDLExpression to) {
@@ -439,11 +859,12 @@ public class VHDLImporter {
 	}
 
 	private static void importFile(File f, HDLLibrary lib, String targetPackage) throws IOException, VhdlParserException {
-		try (final FileInputStream fis = new FileInputStream(f)) {
-			final List<HDLInterface> hifs = importFile(new HDLQualifiedName(targetPackage), fis, lib, f.getAbsolutePath());
-			for (final HDLInterface hdi : hifs) {
-				System.out.println(hdi);
+		importStreaming(new HDLQualifiedName(targetPackage), f, lib, f.getAbsolutePath(), new InterfaceListener() {
+
+			@Override
+			public void imported(HDLInterface hif) {
+				System.out.println(hif);
 			}
-		}
+		});
 	}
 }
@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * PSHDL is a library and (trans-)compiler for PSHDL input. It generates
+ *     output suitable for implementation or simulation of it.
+ *
+ *     Copyright (C) 2014 Karsten Becker (feedback (at) pshdl (dot) org)
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     This License does not grant permission to use the trade names, trademarks,
+ *     service marks, or product names of the Licensor, except as required for
+ *     reasonable and customary use in describing the origin of the Work.
+ *
+ * Contributors:
+ *     Karsten Becker - initial API and implementation
+ ******************************************************************************/
+package org.pshdl.generator.vhdl;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.pshdl.model.HDLAnnotation;
+import org.pshdl.model.HDLArithOp;
+import org.pshdl.model.HDLArithOp.HDLArithOpType;
+import org.pshdl.model.HDLExpression;
+import org.pshdl.model.HDLInterface;
+import org.pshdl.model.HDLLiteral;
+import org.pshdl.model.HDLPrimitive;
+import org.pshdl.model.HDLPrimitive.HDLPrimitiveType;
+import org.pshdl.model.HDLRange;
+import org.pshdl.model.HDLUnresolvedFragment;
+import org.pshdl.model.HDLVariable;
+import org.pshdl.model.HDLVariableDeclaration;
+import org.pshdl.model.HDLVariableDeclaration.HDLDirection;
+import org.pshdl.model.parser.SourceInfo;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A compact binary encoding of the {@link HDLInterface}s that are created by
+ * {@link VHDLImporter}. Only the subset of the model that the importer
+ * generates can be encoded: primitive ports with literal, arithmetic and
+ * unresolved expressions.
+ *
+ * @author Karsten Becker
+ *
+ */
+public class VHDLInterfaceCodec {
+
+	private static final int MAGIC = 0x50534849;
+	/**
+	 * Needs to be incremented whenever the format changes
+	 */
+	public static final int VERSION = 2;
+
+	private static final int EXP_NULL = 0;
+	private static final int EXP_LITERAL = 1;
+	private static final int EXP_ARITH = 2;
+	private static final int EXP_FRAGMENT = 3;
+
+	/**
+	 * Writes the interfaces.
+	 *
+	 * @throws IOException
+	 *             if writing fails or an interface contains elements that can
+	 *             not be encoded
+	 */
+	public static void write(DataOutput out, List<HDLInterface> interfaces) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(interfaces.size());
+		for (final HDLInterface hif : interfaces) {
+			out.writeUTF(hif.getName());
+			writeComments(out, hif.getMeta(SourceInfo.COMMENT));
+			final List<HDLVariableDeclaration> ports = hif.getPorts();
+			out.writeInt(ports.size());
+			for (final HDLVariableDeclaration hvd : ports) {
+				writeDeclaration(out, hvd);
+			}
+		}
+	}
+
+	/**
+	 * Reads interfaces that have been written by
+	 * {@link #write(DataOutput, List)}. The returned interfaces are frozen.
+	 *
+	 * @throws IOException
+	 *             if reading fails or the data is not in the expected format
+	 */
+	public static List<HDLInterface> read(DataInput in) throws IOException {
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not an interface cache entry");
+		if (in.readInt() != VERSION)
+			throw new IOException("Unsupported interface cache version");
+		final int count = in.readInt();
+		final List<HDLInterface> res = Lists.newArrayListWithCapacity(count);
+		for (int i = 0; i < count; i++) {
+			HDLInterface hif = new HDLInterface().setName(in.readUTF());
+			final List<String> comments = readComments(in);
+			// The comments of the variables, in the order of the variables
+			final List<List<String>> variableComments = Lists.newArrayList();
+			final int ports = in.readInt();
+			for (int j = 0; j < ports; j++) {
+				hif = hif.addPorts(readDeclaration(in, variableComments));
+			}
+			// Meta data is added to the frozen copies, the copies are what is
+			// returned
+			hif = hif.copyDeepFrozen(null);
+			if (comments != null) {
+				hif.addMeta(SourceInfo.COMMENT, comments);
+			}
+			final Iterator<List<String>> iterator = variableComments.iterator();
+			for (final HDLVariableDeclaration hvd : hif.getPorts()) {
+				for (final HDLVariable hvar : hvd.getVariables()) {
+					final List<String> varComments = iterator.next();
+					if (varComments != null) {
+						hvar.addMeta(SourceInfo.COMMENT, varComments);
+					}
+				}
+			}
+			res.add(hif);
+		}
+		return res;
+	}
+
+	private static void writeDeclaration(DataOutput out, HDLVariableDeclaration hvd) throws IOException {
+		final HDLPrimitive primitive = hvd.getPrimitive();
+		if (primitive == null)
+			throw new IOException("Only primitive ports can be encoded");
+		out.writeUTF(hvd.getDirection().name());
+		out.writeUTF(primitive.getType().name());
+		writeExpression(out, primitive.getWidth());
+		final List<HDLAnnotation> annotations = hvd.getAnnotations();
+		out.writeInt(annotations.size());
+		for (final HDLAnnotation anno : annotations) {
+			out.writeUTF(anno.getName());
+			writeNullable(out, anno.getValue());
+		}
+		final List<HDLVariable> variables = hvd.getVariables();
+		out.writeInt(variables.size());
+		for (final HDLVariable hvar : variables) {
+			out.writeUTF(hvar.getName());
+			final List<HDLExpression> dimensions = hvar.getDimensions();
+			out.writeInt(dimensions.size());
+			for (final HDLExpression dim : dimensions) {
+				writeExpression(out, dim);
+			}
+			writeExpression(out, hvar.getDefaultValue());
+			writeComments(out, hvar.getMeta(SourceInfo.COMMENT));
+		}
+	}
+
+	private static HDLVariableDeclaration readDeclaration(DataInput in, List<List<String>> variableComments) throws IOException {
+		final HDLDirection direction = HDLDirection.valueOf(in.readUTF());
+		final HDLPrimitiveType type = HDLPrimitiveType.valueOf(in.readUTF());
+		final HDLPrimitive primitive = new HDLPrimitive().setType(type).setWidth(readExpression(in));
+		HDLVariableDeclaration hvd = new HDLVariableDeclaration().setDirection(direction).setType(primitive);
+		final int annotations = in.readInt();
+		for (int i = 0; i < annotations; i++) {
+			hvd = hvd.addAnnotations(new HDLAnnotation().setName(in.readUTF()).setValue(readNullable(in)));
+		}
+		final int variables = in.readInt();
+		for (int i = 0; i < variables; i++) {
+			final String name = in.readUTF();
+			final int dims = in.readInt();
+			final ArrayList<HDLExpression> dimensions = Lists.newArrayListWithCapacity(dims);
+			for (int j = 0; j < dims; j++) {
+				dimensions.add(readExpression(in));
+			}
+			hvd = hvd.addVariables(new HDLVariable().setName(name).setDimensions(dimensions).setDefaultValue(readExpression(in)));
+			variableComments.add(readComments(in));
+		}
+		return hvd;
+	}
+
+	private static void writeExpression(DataOutput out, HDLExpression exp) throws IOException {
+		if (exp == null) {
+			out.writeByte(EXP_NULL);
+		} else if (exp instanceof HDLLiteral) {
+			final HDLLiteral lit = (HDLLiteral) exp;
+			out.writeByte(EXP_LITERAL);
+			out.writeUTF(lit.getVal());
+			out.writeBoolean(Boolean.TRUE.equals(lit.getStr()));
+		} else if (exp instanceof HDLArithOp) {
+			final HDLArithOp op = (HDLArithOp) exp;
+			out.writeByte(EXP_ARITH);
+			out.writeUTF(op.getType().name());
+			writeExpression(out, op.getLeft());
+			writeExpression(out, op.getRight());
+		} else if (exp.getClass() == HDLUnresolvedFragment.class) {
+			out.writeByte(EXP_FRAGMENT);
+			writeFragment(out, (HDLUnresolvedFragment) exp);
+		} else
+			throw new IOException("Can not encode expression " + exp);
+	}
+
+	private static HDLExpression readExpression(DataInput in) throws IOException {
+		final int kind = in.readByte();
+		switch (kind) {
+		case EXP_NULL:
+			return null;
+		case EXP_LITERAL:
+			return new HDLLiteral().setVal(in.readUTF()).setStr(in.readBoolean());
+		case EXP_ARITH:
+			final HDLArithOpType type = HDLArithOpType.valueOf(in.readUTF());
+			final HDLExpression left = readExpression(in);
+			final HDLExpression right = readExpression(in);
+			return new HDLArithOp().setLeft(left).setType(type).setRight(right);
+		case EXP_FRAGMENT:
+			return readFragment(in);
+		default:
+			throw new IOException("Unknown expression kind " + kind);
+		}
+	}
+
+	private static void writeFragment(DataOutput out, HDLUnresolvedFragment frag) throws IOException {
+		out.writeUTF(frag.getFrag());
+		out.writeBoolean(Boolean.TRUE.equals(frag.getIsStatement()));
+		final List<HDLExpression> array = frag.getArray();
+		out.writeInt(array.size());
+		for (final HDLExpression exp : array) {
+			writeExpression(out, exp);
+		}
+		final List<HDLRange> bits = frag.getBits();
+		out.writeInt(bits.size());
+		for (final HDLRange range : bits) {
+			writeExpression(out, range.getFrom());
+			writeExpression(out, range.getInc());
+			writeExpression(out, range.getDec());
+			writeExpression(out, range.getTo());
+		}
+		final HDLUnresolvedFragment sub = frag.getSub();
+		if (sub == null) {
+			out.writeBoolean(false);
+		} else {
+			if (sub.getClass() != HDLUnresolvedFragment.class)
+				throw new IOException("Can not encode fragment " + sub);
+			out.writeBoolean(true);
+			writeFragment(out, sub);
+		}
+	}
+
+	private static HDLUnresolvedFragment readFragment(DataInput in) throws IOException {
+		HDLUnresolvedFragment frag = new HDLUnresolvedFragment().setFrag(in.readUTF()).setIsStatement(in.readBoolean());
+		final int array = in.readInt();
+		for (int i = 0; i < array; i++) {
+			frag = frag.addArray(readExpression(in));
+		}
+		final int bits = in.readInt();
+		for (int i = 0; i < bits; i++) {
+			final HDLExpression from = readExpression(in);
+			final HDLExpression inc = readExpression(in);
+			final HDLExpression dec = readExpression(in);
+			final HDLExpression to = readExpression(in);
+			frag = frag.addBits(new HDLRange().setFrom(from).setInc(inc).setDec(dec).setTo(to));
+		}
+		if (in.readBoolean()) {
+			frag = frag.setSub(readFragment(in));
+		}
+		return frag;
+	}
+
+	private static void writeComments(DataOutput out, List<String> comments) throws IOException {
+		if (comments == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(comments.size());
+		for (final String comment : comments) {
+			out.writeUTF(comment);
+		}
+	}
+
+	private static List<String> readComments(DataInput in) throws IOException {
+		final int count = in.readInt();
+		if (count < 0)
+			return null;
+		final List<String> res = Lists.newArrayListWithCapacity(count);
+		for (int i = 0; i < count; i++) {
+			res.add(in.readUTF());
+		}
+		return res;
+	}
+
+	private static void writeNullable(DataOutput out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readNullable(DataInput in) throws IOException {
+		if (in.readBoolean())
+			return in.readUTF();
+		return null;
+	}
+}
@@ -0,0 +1,403 @@
+/*******************************************************************************
+ * PSHDL is a library and (trans-)compiler for PSHDL input. It generates
+ *     output suitable for implementation or simulation of it.
+ *
+ *     Copyright (C) 2014 Karsten Becker (feedback (at) pshdl (dot) org)
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     This License does not grant permission to use the trade names, trademarks,
+ *     service marks, or product names of the Licensor, except as required for
+ *     reasonable and customary use in describing the origin of the Work.
+ *
+ * Contributors:
+ *     Karsten Becker - initial API and implementation
+ ******************************************************************************/
+package org.pshdl.generator.vhdl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.pshdl.generator.vhdl.VHDLOutputValidator.VHDLErrorCode;
+import org.pshdl.model.HDLInterface;
+import org.pshdl.model.HDLInterfaceInstantiation;
+import org.pshdl.model.HDLPackage;
+import org.pshdl.model.HDLUnresolvedFragment;
+import org.pshdl.model.utils.PSAbstractCompiler;
+import org.pshdl.model.validation.Problem;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * An index of the entities that are declared in a directory of VHDL files.
+ * Instead of importing every file of a large library up front, only the files
+ * that declare entities that are actually referenced are imported. Before a
+ * file is imported, the files that declare the packages it uses and the
+ * entities it instantiates are imported, so that files are always imported in
+ * dependency order. {@link PStoVHDLCompiler} calls
+ * {@link #resolveMissing(PSAbstractCompiler, HDLPackage)} for every package
+ * that it compiles, so that interfaces which the library can not resolve are
+ * imported on demand.
+ * <p>
+ * If an entity is declared in more than one file, the file that comes first
+ * in path order is used and a {@link VHDLErrorCode#DUPLICATE_ENTITY} warning
+ * is reported for it.
+ * <p>
+ * The index is stored in the directory and only files that changed since the
+ * last time are scanned again. Scanning uses the {@link VHDLHeaderScanner},
+ * so no file is parsed while building the index.
+ *
+ * @author Karsten Becker
+ *
+ */
+public class VHDLLibraryIndex {
+
+	public static final String INDEX_NAME = ".pshdl-vhdl-index";
+	private static final Pattern VHDL_REFERENCE = Pattern.compile("VHDL\\s*\\.\\s*work\\s*\\.\\s*(\\*|[a-zA-Z_][a-zA-Z0-9_]*)");
+	private static final int MAGIC = 0x5053494E;
+	private static final int VERSION = 2;
+
+	private static final class IndexedFile {
+		public final long length;
+		public final long lastModified;
+		public final List<String> entities;
+		public final List<String> packages;
+		public final List<String> usedPackages;
+		public final List<String> usedEntities;
+
+		public IndexedFile(long length, long lastModified, List<String> entities, List<String> packages, List<String> usedPackages, List<String> usedEntities) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.entities = entities;
+			this.packages = packages;
+			this.usedPackages = usedPackages;
+			this.usedEntities = usedEntities;
+		}
+
+		public boolean isCurrent(File file) {
+			return (file.length() == length) && (file.lastModified() == lastModified);
+		}
+	}
+
+	private final File directory;
+	private final Map<String, IndexedFile> files = Maps.newTreeMap();
+	private final Map<String, String> entities = Maps.newHashMap();
+	private final Map<String, String> packages = Maps.newHashMap();
+	/**
+	 * The files that declare an entity, for entities that are declared more
+	 * than once
+	 */
+	private final Map<String, List<String>> duplicates = Maps.newHashMap();
+	private final Set<String> importedFiles = Sets.newHashSet();
+
+	private VHDLLibraryIndex(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Opens the index of a library directory. The stored index is updated for
+	 * all files that have been added, changed or removed and written back if
+	 * anything changed.
+	 *
+	 * @param directory
+	 *            the directory that contains the VHDL files, sub directories
+	 *            are included
+	 * @return the index
+	 * @throws IOException
+	 *             if a VHDL file can not be read
+	 */
+	public static VHDLLibraryIndex open(File directory) throws IOException {
+		final VHDLLibraryIndex index = new VHDLLibraryIndex(directory);
+		final File indexFile = new File(directory, INDEX_NAME);
+		if (indexFile.isFile()) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+				index.read(in);
+			} catch (final IOException e) {
+				// A damaged index is simply built again
+				index.files.clear();
+			}
+		}
+		if (index.update()) {
+			index.write(indexFile);
+		}
+		for (final Map.Entry<String, IndexedFile> e : index.files.entrySet()) {
+			for (final String entity : e.getValue().entities) {
+				final String first = index.entities.get(entity);
+				if (first == null) {
+					index.entities.put(entity, e.getKey());
+				} else if (!first.equals(e.getKey())) {
+					List<String> declaring = index.duplicates.get(entity);
+					if (declaring == null) {
+						declaring = Lists.newArrayList(first);
+						index.duplicates.put(entity, declaring);
+					}
+					declaring.add(e.getKey());
+				}
+			}
+			for (final String pkg : e.getValue().packages) {
+				index.packages.put(pkg, e.getKey());
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * The names of all indexed entities, in lower case
+	 */
+	public Set<String> getEntityNames() {
+		return Collections.unmodifiableSet(entities.keySet());
+	}
+
+	/**
+	 * Imports the file that declares an entity, unless it has been imported
+	 * already. The files it depends on are imported first.
+	 *
+	 * @param comp
+	 *            the compiler to which the file is added
+	 * @param entity
+	 *            the name of the entity, case is ignored
+	 * @return the interfaces of the file, or <code>null</code> if the entity
+	 *         is not in the index, the file has been imported before, or
+	 *         the import failed
+	 * @throws IOException
+	 */
+	public synchronized List<HDLInterface> resolve(PSAbstractCompiler comp, String entity) throws IOException {
+		final String name = entity.toLowerCase();
+		final String path = entities.get(name);
+		if (path == null)
+			return null;
+		final List<HDLInterface> res = importFile(comp, path);
+		final List<String> declaring = duplicates.get(name);
+		if ((res != null) && (declaring != null)) {
+			comp.addError(new File(directory, path).getAbsolutePath(), new Problem(VHDLErrorCode.DUPLICATE_ENTITY, "The entity " + name
+					+ " is declared in " + Joiner.on(", ").join(declaring) + ", the one of " + path + " is used", 0, 0, 1, 0));
+		}
+		return res;
+	}
+
+	/**
+	 * Imports the entities that the interface instantiations and unresolved
+	 * references of a package refer to, but which the library can not
+	 * resolve.
+	 *
+	 * @param comp
+	 *            the compiler to which the VHDL files are added
+	 * @param pkg
+	 *            the package that is about to be compiled
+	 * @throws IOException
+	 */
+	public void resolveMissing(PSAbstractCompiler comp, HDLPackage pkg) throws IOException {
+		for (final HDLInterfaceInstantiation hii : pkg.getAllObjectsOf(HDLInterfaceInstantiation.class, true)) {
+			if (!hii.resolveHIf().isPresent()) {
+				resolve(comp, hii.getHIfRefName().getLastSegment());
+			}
+		}
+		for (final HDLUnresolvedFragment fragment : pkg.getAllObjectsOf(HDLUnresolvedFragment.class, true)) {
+			resolve(comp, fragment.getFrag());
+		}
+	}
+
+	/**
+	 * Resolves the indexed entities that a PSHDL file refers to with
+	 * <code>VHDL.work.&lt;entity&gt;</code>, before the file is validated. If
+	 * the file imports <code>VHDL.work.*</code>, any identifier can be an
+	 * entity, so every identifier that names an indexed entity is resolved.
+	 *
+	 * @param comp
+	 *            the compiler to which the VHDL files are added
+	 * @param pshdlFile
+	 *            the PSHDL file
+	 * @throws IOException
+	 */
+	public void resolveReferences(PSAbstractCompiler comp, File pshdlFile) throws IOException {
+		final String source = new String(Files.readAllBytes(pshdlFile.toPath()), StandardCharsets.UTF_8);
+		boolean wildcard = false;
+		final Matcher m = VHDL_REFERENCE.matcher(source);
+		while (m.find()) {
+			if ("*".equals(m.group(1))) {
+				wildcard = true;
+			} else {
+				resolve(comp, m.group(1));
+			}
+		}
+		if (!wildcard)
+			return;
+		int i = 0;
+		while (i < source.length()) {
+			if (!Character.isJavaIdentifierStart(source.charAt(i))) {
+				i++;
+				continue;
+			}
+			final int start = i;
+			while ((i < source.length()) && Character.isJavaIdentifierPart(source.charAt(i))) {
+				i++;
+			}
+			resolve(comp, source.substring(start, i));
+		}
+	}
+
+	private List<HDLInterface> importFile(PSAbstractCompiler comp, String path) throws IOException {
+		if (!importedFiles.add(path))
+			return null;
+		final IndexedFile indexed = files.get(path);
+		for (final String pkg : indexed.usedPackages) {
+			final String pkgPath = packages.get(pkg);
+			if (pkgPath != null) {
+				importFile(comp, pkgPath);
+			}
+		}
+		for (final String entity : indexed.usedEntities) {
+			final String entityPath = entities.get(entity);
+			if (entityPath != null) {
+				importFile(comp, entityPath);
+			}
+		}
+		return PStoVHDLCompiler.addVHDL(comp, new File(directory, path));
+	}
+
+	/**
+	 * Scans all files that are new or changed and removes those that no longer
+	 * exist
+	 *
+	 * @return <code>true</code> if the index changed
+	 */
+	private boolean update() throws IOException {
+		final Map<String, File> found = Maps.newTreeMap();
+		collectFiles(directory, "", found);
+		boolean changed = files.keySet().retainAll(found.keySet());
+		for (final Map.Entry<String, File> e : found.entrySet()) {
+			final File file = e.getValue();
+			final IndexedFile indexed = files.get(e.getKey());
+			if ((indexed != null) && indexed.isCurrent(file)) {
+				continue;
+			}
+			final byte[] contents = Files.readAllBytes(file.toPath());
+			final List<String> fileEntities = Lists.newArrayList();
+			final List<String> filePackages = Lists.newArrayList();
+			VHDLHeaderScanner.scanDeclarations(contents, fileEntities, filePackages);
+			final List<String> usedPackages = Lists.newArrayList();
+			final List<String> usedEntities = Lists.newArrayList();
+			VHDLHeaderScanner.scanReferences(contents, usedPackages, usedEntities);
+			files.put(e.getKey(), new IndexedFile(file.length(), file.lastModified(), fileEntities, filePackages, usedPackages, usedEntities));
+			changed = true;
+		}
+		return changed;
+	}
+
+	/**
+	 * Adds the VHDL files of the directory and its subdirectories to found,
+	 * keyed by their path relative to the directory
+	 */
+	static void collectFiles(File dir, String prefix, Map<String, File> found) {
+		final File[] children = dir.listFiles();
+		if (children == null)
+			return;
+		for (final File child : children) {
+			final String path = prefix + child.getName();
+			if (child.isDirectory()) {
+				collectFiles(child, path + "/", found);
+			} else if (child.getName().endsWith(".vhd") || child.getName().endsWith(".vhdl")) {
+				found.put(path, child);
+			}
+		}
+	}
+
+	private void read(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a VHDL library index");
+		if (in.readInt() != VERSION)
+			throw new IOException("Unsupported VHDL library index version");
+		final int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			final String path = in.readUTF();
+			final long length = in.readLong();
+			final long lastModified = in.readLong();
+			final List<String> fileEntities = readNames(in);
+			final List<String> filePackages = readNames(in);
+			final List<String> usedPackages = readNames(in);
+			final List<String> usedEntities = readNames(in);
+			files.put(path, new IndexedFile(length, lastModified, fileEntities, filePackages, usedPackages, usedEntities));
+		}
+	}
+
+	private static List<String> readNames(DataInputStream in) throws IOException {
+		final int count = in.readInt();
+		final List<String> res = Lists.newArrayListWithCapacity(count);
+		for (int i = 0; i < count; i++) {
+			res.add(in.readUTF());
+		}
+		return res;
+	}
+
+	private void write(File indexFile) {
+		File tmp = null;
+		try {
+			tmp = File.createTempFile(INDEX_NAME, ".tmp", directory);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(files.size());
+				for (final Map.Entry<String, IndexedFile> e : files.entrySet()) {
+					final IndexedFile indexed = e.getValue();
+					out.writeUTF(e.getKey());
+					out.writeLong(indexed.length);
+					out.writeLong(indexed.lastModified);
+					writeNames(out, indexed.entities);
+					writeNames(out, indexed.packages);
+					writeNames(out, indexed.usedPackages);
+					writeNames(out, indexed.usedEntities);
+				}
+			}
+			try {
+				Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (final AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			tmp = null;
+		} catch (final IOException e) {
+			// The library might be read-only, the index is then built again
+			// next time
+		} finally {
+			if (tmp != null) {
+				tmp.delete();
+			}
+		}
+	}
+
+	private static void writeNames(DataOutputStream out, List<String> names) throws IOException {
+		out.writeInt(names.size());
+		for (final String name : names) {
+			out.writeUTF(name);
+		}
+	}
+}
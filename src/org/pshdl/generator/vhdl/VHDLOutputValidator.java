@@ -48,7 +48,7 @@ import org.pshdl.model.validation.Problem.ProblemSeverity;
 public class VHDLOutputValidator implements IHDLValidator {
 
 	public static enum VHDLErrorCode implements IErrorCode {
-		KEYWORD_NAME(WARNING), KEYWORD_TYPE(ERROR), PARSE_ERROR(ERROR);
+		KEYWORD_NAME(WARNING), KEYWORD_TYPE(ERROR), PARSE_ERROR(ERROR), DUPLICATE_ENTITY(WARNING);
 
 		public final ProblemSeverity severity;
 
@@ -80,6 +80,9 @@ public class VHDLOutputValidator implements IHDLValidator {
 						"Don't use a VHDL keyword or don't end with an underscore as identifier");
 			case KEYWORD_TYPE:
 				return new HDLAdvise(problem, "The used type name is a keyword in VHDL", "Keywords are not supported for type names", "Don't use a VHDL keyword as identifier");
+			case DUPLICATE_ENTITY:
+				return new HDLAdvise(problem, "An entity is declared in more than one file of the VHDL library",
+						"The entity of the file that comes first in path order is used", "Remove or rename one of the entities");
 
 			}
 		}
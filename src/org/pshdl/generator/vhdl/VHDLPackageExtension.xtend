@@ -57,6 +57,8 @@ import java.util.ArrayList
 import java.util.Collection
 import java.util.Collections
 import java.util.EnumSet
+import java.util.HashSet
+import java.util.LinkedHashMap
 import java.util.LinkedHashSet
 import java.util.LinkedList
 import java.util.List
@@ -109,6 +111,17 @@ class VHDLPackageExtension {
 	public static VHDLPackageExtension INST = new VHDLPackageExtension
 
 	def List<LibraryUnit> toVHDL(HDLUnit obj) {
+		val VHDLCompilationScope scope = VHDLCompilationScope.open
+		scope.enterUnit(obj)
+		try {
+			return createVHDL(obj)
+		} finally {
+			scope.leaveUnit
+			scope.close
+		}
+	}
+
+	def private List<LibraryUnit> createVHDL(HDLUnit obj) {
 		val List<LibraryUnit> res = new LinkedList<LibraryUnit>
 		val HDLQualifiedName entityName = fullNameOf(obj)
 		val Entity e = new Entity(entityName.dashString)
@@ -182,22 +195,46 @@ class VHDLPackageExtension {
 		a.declarations.addAll(unit.components.values as Collection)
 		a.declarations.addAll(unit.internals as List)
 		a.statements.addAll(unit.concurrentStatements)
+		val settings = VHDLCompilationScope.current.settings
+		if (settings.eliminateDeadSignals)
+			unit.removeEmptyStatements
 		for (Map.Entry<Integer,LinkedList<SequentialStatement>> uc : unit.unclockedStatements.entrySet) {
-			val ProcessStatement ps = new ProcessStatement
-			ps.sensitivityList.addAll(createSensitivyList(unit, uc.key))
-			ps.statements.addAll(uc.value)
-			if (ps.sensitivityList.empty) {
-				val WaitSeacher ssv = new WaitSeacher
-				ps.statements.forEach[ssv.visit(it)]
-				if (!ssv.hasWait)
-					ps.statements.add(new WaitStatement)
+			val concurrent = if (settings.concurrentAssignments) unit.toConcurrentAssignments(uc.key) else null
+			if (concurrent !== null) {
+				a.statements.addAll(concurrent)
+			} else {
+				val ProcessStatement ps = new ProcessStatement
+				ps.sensitivityList.addAll(createSensitivyList(unit, uc.key))
+				ps.statements.addAll(uc.value)
+				if (ps.sensitivityList.empty) {
+					val WaitSeacher ssv = new WaitSeacher
+					ps.statements.forEach[ssv.visit(it)]
+					if (!ssv.hasWait)
+						ps.statements.add(new WaitStatement)
+				}
+				a.statements.add(ps)
 			}
-			a.statements.add(ps)
 		}
-		for (Map.Entry<HDLRegisterConfig, LinkedList<SequentialStatement>> pc : unit.clockedStatements.entrySet) {
-			val ProcessStatement ps = new ProcessStatement
-			ps.statements.add(createIfStatement(obj, ps, pc.key, pc.value, unit))
-			a.statements.add(ps)
+		if (settings.mergeClockedProcesses) {
+			val Map<String, List<HDLRegisterConfig>> groups = new LinkedHashMap<String, List<HDLRegisterConfig>>
+			for (HDLRegisterConfig config : unit.clockedStatements.keySet) {
+				val String key = (config.clk.toVHDL as Signal).identifier + ":" + config.clockType
+				var List<HDLRegisterConfig> group = groups.get(key)
+				if (group === null) {
+					group = new LinkedList<HDLRegisterConfig>
+					groups.put(key, group)
+				}
+				group.add(config)
+			}
+			for (List<HDLRegisterConfig> group : groups.values) {
+				a.statements.add(createMergedProcess(obj, group, unit))
+			}
+		} else {
+			for (Map.Entry<HDLRegisterConfig, LinkedList<SequentialStatement>> pc : unit.clockedStatements.entrySet) {
+				val ProcessStatement ps = new ProcessStatement
+				ps.statements.add(createIfStatement(obj, ps, pc.key, pc.value, unit))
+				a.statements.add(ps)
+			}
 		}
 		res.add(a)
 		return res
@@ -238,16 +275,18 @@ class VHDLPackageExtension {
 		}
 	}
 
-	def public String getPackageName(HDLQualifiedName entityName) '''«entityName.dashString»Pkg'''
+	def public String getPackageName(HDLQualifiedName entityName) {
+		return VHDLUtils.getPackageName(entityName)
+	}
 
 	def dashString(HDLQualifiedName name) {
-		return name.toString('_'.charAt(0))
+		return VHDLUtils.dashString(name)
 	}
 
 	def public HDLQualifiedName getPackageNameRef(HDLQualifiedName entityName) {
 		if (entityName.getSegment(0).equals("VHDL"))
 			return entityName.skipFirst(1)
-		return HDLQualifiedName.create("work", '''«entityName.dashString»Pkg''')
+		return HDLQualifiedName.create("work", getPackageName(entityName))
 	}
 
 	def public HDLQualifiedName getNameRef(HDLQualifiedName entityName) {
@@ -291,6 +330,7 @@ class VHDLPackageExtension {
 	def private Collection<? extends Signal> createSensitivyList(VHDLContext ctx, int pid) {
 		if (ctx.noSensitivity.containsKey(pid))
 			return Collections.emptyList
+		val VHDLCompilationScope scope = VHDLCompilationScope.current
 		val List<Signal> sensitivity = new LinkedList<Signal>
 		val Set<String> vars = new TreeSet<String>
 		for (HDLStatement stmnt : ctx.sensitiveStatements.get(pid)) {
@@ -298,7 +338,8 @@ class VHDLPackageExtension {
 			for (HDLVariableRef ref : refs) {
 				val hvar = ref.resolveVarForced("VHDL")
 				//Memories generate a variable, those don't need to be in the sensitivity list
-				if (hvar.getAnnotation(HDLBuiltInAnnotations.memory) === null) {
+				//Dead signals and reads by assignments to them are not generated
+				if (hvar.getAnnotation(HDLBuiltInAnnotations.memory) === null && !scope.isDead(hvar) && !scope.isInDeadAssignment(ref)) {
 					val IHDLObject container = hvar.container
 					if (container instanceof HDLVariableDeclaration) {
 						val HDLVariableDeclaration hdv = container as HDLVariableDeclaration
@@ -330,6 +371,32 @@ class VHDLPackageExtension {
 		return (reference as HDLResolvedRef).resolveVar.get
 	}
 
+	/**
+	 * Creates one process for all register configs that share the same clock and edge. Each asynchronous
+	 * reset gets its own if statement, the synchronous configs share a single edge detection.
+	 */
+	def private ProcessStatement createMergedProcess(HDLUnit hUnit, List<HDLRegisterConfig> configs, VHDLContext unit) {
+		val ProcessStatement ps = new ProcessStatement
+		var IfStatement syncIf = null
+		for (HDLRegisterConfig config : configs) {
+			val stmnt = createIfStatement(hUnit, ps, config, unit.clockedStatements.get(config), unit)
+			if (config.syncType === HDLRegisterConfig.HDLRegSyncType.ASYNC)
+				ps.statements.add(stmnt)
+			else if (syncIf === null) {
+				syncIf = stmnt as IfStatement
+				ps.statements.add(syncIf)
+			} else
+				syncIf.statements.addAll((stmnt as IfStatement).statements)
+		}
+		val Set<String> sensitive = new HashSet<String>
+		val iter = ps.sensitivityList.iterator
+		while (iter.hasNext) {
+			if (!sensitive.add(iter.next.identifier))
+				iter.remove
+		}
+		return ps
+	}
+
 	def private SequentialStatement createIfStatement(HDLUnit hUnit, ProcessStatement ps, HDLRegisterConfig config,
 		LinkedList<SequentialStatement> value, VHDLContext unit) {
 		val key = config.normalize
@@ -364,6 +431,15 @@ class VHDLPackageExtension {
 	}
 
 	def VhdlFile toVHDL(HDLPackage obj) {
+		val VHDLCompilationScope scope = VHDLCompilationScope.open
+		try {
+			return createVHDL(obj)
+		} finally {
+			scope.close
+		}
+	}
+
+	def private VhdlFile createVHDL(HDLPackage obj) {
 		val VhdlFile res = new VhdlFile
 		var PackageDeclaration pd = null
 		for (HDLDeclaration decl : obj.declarations) {
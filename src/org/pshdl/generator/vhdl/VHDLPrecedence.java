@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * PSHDL is a library and (trans-)compiler for PSHDL input. It generates
+ *     output suitable for implementation or simulation of it.
+ *
+ *     Copyright (C) 2014 Karsten Becker (feedback (at) pshdl (dot) org)
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     This License does not grant permission to use the trade names, trademarks,
+ *     service marks, or product names of the Licensor, except as required for
+ *     reasonable and customary use in describing the origin of the Work.
+ *
+ * Contributors:
+ *     Karsten Becker - initial API and implementation
+ ******************************************************************************/
+package org.pshdl.generator.vhdl;
+
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+import de.upb.hni.vmagic.expression.Add;
+import de.upb.hni.vmagic.expression.And;
+import de.upb.hni.vmagic.expression.BinaryExpression;
+import de.upb.hni.vmagic.expression.Concatenate;
+import de.upb.hni.vmagic.expression.Divide;
+import de.upb.hni.vmagic.expression.Equals;
+import de.upb.hni.vmagic.expression.Expression;
+import de.upb.hni.vmagic.expression.GreaterEquals;
+import de.upb.hni.vmagic.expression.GreaterThan;
+import de.upb.hni.vmagic.expression.LessEquals;
+import de.upb.hni.vmagic.expression.LessThan;
+import de.upb.hni.vmagic.expression.Minus;
+import de.upb.hni.vmagic.expression.Multiply;
+import de.upb.hni.vmagic.expression.Not;
+import de.upb.hni.vmagic.expression.NotEquals;
+import de.upb.hni.vmagic.expression.Or;
+import de.upb.hni.vmagic.expression.Parentheses;
+import de.upb.hni.vmagic.expression.Pow;
+import de.upb.hni.vmagic.expression.Rem;
+import de.upb.hni.vmagic.expression.Subtract;
+import de.upb.hni.vmagic.expression.Xor;
+
+/**
+ * Inserts {@link Parentheses} around the operands of VHDL operators only when
+ * the operator precedence of VHDL requires them. The levels follow the
+ * expression grammar of IEEE 1076: logical, relational, shift, adding, sign,
+ * multiplying and miscellaneous operators, followed by primaries.
+ *
+ * @author Karsten Becker
+ *
+ */
+@SuppressWarnings("rawtypes")
+public class VHDLPrecedence {
+	/**
+	 * Used for binary expressions that are not known, they are always
+	 * wrapped
+	 */
+	public static final int UNKNOWN = 0;
+	public static final int LOGICAL = 1;
+	public static final int RELATIONAL = 2;
+	public static final int SHIFT = 3;
+	public static final int ADDING = 4;
+	public static final int SIGN = 5;
+	public static final int MULTIPLYING = 6;
+	public static final int MISC = 7;
+	public static final int PRIMARY = 8;
+
+	private static final Map<Class<?>, Integer> PRECEDENCE = Maps.newHashMap();
+
+	static {
+		PRECEDENCE.put(And.class, LOGICAL);
+		PRECEDENCE.put(Or.class, LOGICAL);
+		PRECEDENCE.put(Xor.class, LOGICAL);
+		PRECEDENCE.put(Equals.class, RELATIONAL);
+		PRECEDENCE.put(NotEquals.class, RELATIONAL);
+		PRECEDENCE.put(LessThan.class, RELATIONAL);
+		PRECEDENCE.put(LessEquals.class, RELATIONAL);
+		PRECEDENCE.put(GreaterThan.class, RELATIONAL);
+		PRECEDENCE.put(GreaterEquals.class, RELATIONAL);
+		PRECEDENCE.put(Add.class, ADDING);
+		PRECEDENCE.put(Subtract.class, ADDING);
+		PRECEDENCE.put(Concatenate.class, ADDING);
+		PRECEDENCE.put(Minus.class, SIGN);
+		PRECEDENCE.put(Multiply.class, MULTIPLYING);
+		PRECEDENCE.put(Divide.class, MULTIPLYING);
+		PRECEDENCE.put(Rem.class, MULTIPLYING);
+		PRECEDENCE.put(Pow.class, MISC);
+		PRECEDENCE.put(Not.class, MISC);
+	}
+
+	private VHDLPrecedence() {
+	}
+
+	/**
+	 * The precedence level of the given expression. Everything that is not an
+	 * operator is considered a primary.
+	 */
+	public static int precedenceOf(Expression exp) {
+		return precedenceOf(exp.getClass());
+	}
+
+	private static int precedenceOf(Class<?> clazz) {
+		final Integer level = PRECEDENCE.get(clazz);
+		if (level != null)
+			return level;
+		if (BinaryExpression.class.isAssignableFrom(clazz))
+			return UNKNOWN;
+		return PRIMARY;
+	}
+
+	/**
+	 * Prepares the left operand of a binary operator
+	 *
+	 * @param operator
+	 *            the class of the operator that the operand is used in
+	 * @param operand
+	 *            the operand
+	 * @return either the operand or the operand wrapped in {@link Parentheses}
+	 */
+	public static Expression left(Class<? extends BinaryExpression> operator, Expression operand) {
+		return operand(operator, operand, false);
+	}
+
+	/**
+	 * Prepares the right operand of a binary operator
+	 *
+	 * @param operator
+	 *            the class of the operator that the operand is used in
+	 * @param operand
+	 *            the operand
+	 * @return either the operand or the operand wrapped in {@link Parentheses}
+	 */
+	public static Expression right(Class<? extends BinaryExpression> operator, Expression operand) {
+		return operand(operator, operand, true);
+	}
+
+	/**
+	 * Prepares the operand of the unary operators {@link Minus} and
+	 * {@link Not}
+	 *
+	 * @param operator
+	 *            the class of the operator that the operand is used in
+	 * @param operand
+	 *            the operand
+	 * @return either the operand or the operand wrapped in {@link Parentheses}
+	 */
+	public static Expression unary(Class<? extends Expression> operator, Expression operand) {
+		final int level = precedenceOf(operand);
+		if (precedenceOf(operator) == SIGN) {
+			// - term
+			if (level < MULTIPLYING)
+				return new Parentheses(operand);
+			return operand;
+		}
+		// not primary
+		if (level < PRIMARY)
+			return new Parentheses(operand);
+		return operand;
+	}
+
+	private static Expression operand(Class<? extends BinaryExpression> operator, Expression operand, boolean right) {
+		final int opLevel = precedenceOf(operator);
+		final int level = precedenceOf(operand);
+		if (level == PRIMARY)
+			return operand;
+		if ((opLevel == UNKNOWN) || (level == UNKNOWN))
+			return new Parentheses(operand);
+		if (level == SIGN) {
+			// A sign is only allowed at the start of a simple expression
+			if ((opLevel == ADDING) && !right)
+				return operand;
+			return new Parentheses(operand);
+		}
+		switch (opLevel) {
+		case MISC:
+			// primary ** primary
+			return new Parentheses(operand);
+		case LOGICAL:
+			// Only sequences of the same associative operator are allowed
+			if ((level == LOGICAL) && (right || (operand.getClass() != operator)))
+				return new Parentheses(operand);
+			break;
+		case RELATIONAL:
+		case SHIFT:
+			// Those can not be chained
+			if (level <= opLevel)
+				return new Parentheses(operand);
+			return operand;
+		default:
+			break;
+		}
+		if (level < opLevel)
+			return new Parentheses(operand);
+		if (right && (level == opLevel))
+			return new Parentheses(operand);
+		return operand;
+	}
+}
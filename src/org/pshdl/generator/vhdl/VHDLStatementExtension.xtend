@@ -58,7 +58,6 @@ import de.upb.hni.vmagic.statement.IfStatement
 import de.upb.hni.vmagic.statement.SequentialStatement
 import de.upb.hni.vmagic.statement.SignalAssignment
 import de.upb.hni.vmagic.statement.VariableAssignment
-import de.upb.hni.vmagic.type.ConstrainedArray
 import de.upb.hni.vmagic.type.EnumerationType
 import de.upb.hni.vmagic.type.IndexSubtypeIndication
 import de.upb.hni.vmagic.type.SubtypeIndication
@@ -105,6 +104,7 @@ import org.pshdl.model.HDLResolvedRef
 import org.pshdl.model.HDLStatement
 import org.pshdl.model.HDLSwitchCaseStatement
 import org.pshdl.model.HDLSwitchStatement
+import org.pshdl.model.HDLTernary
 import org.pshdl.model.HDLUnit
 import org.pshdl.model.HDLVariable
 import org.pshdl.model.HDLVariableDeclaration
@@ -346,7 +346,7 @@ class VHDLStatementExtension {
 						// Arrays are always named in VHDL, so the type annotation should be present
 						if (typeAnno.isEmpty) {
 							val HDLQualifiedName name = VHDLPackageExtension.INST.getPackageNameRef(asRef).append(
-								getArrayRefName(hvar, true))
+								VHDLArrayTypes.getTypeName(hvar, true))
 							res.addImport(name)
 							val HDLVariableDeclaration newHVD = hvd.setDirection(HDLDirection.INTERNAL).setVariables(
 								HDLObject.asList(
@@ -373,24 +373,64 @@ class VHDLStatementExtension {
 			return Character.toString((i + integer) as char);
 		}
 
+		def static HDLQualifiedName getOriginalFullName(HDLVariable hvar) {
+			if (hvar.getMeta(ORIGINAL_FULLNAME) !== null)
+				return hvar.getMeta(ORIGINAL_FULLNAME)
+			return FullNameExtension.fullNameOf(hvar)
+		}
+
 		def static String getArrayRefName(HDLVariable hvar, boolean external) {
 			var String res
-			if (external) {
-				var HDLQualifiedName fullName
-				if (hvar.getMeta(ORIGINAL_FULLNAME) !== null)
-					fullName = hvar.getMeta(ORIGINAL_FULLNAME)
-				else
-					fullName = FullNameExtension.fullNameOf(hvar)
-				res = fullName.toString('_')
-			} else
+			if (external)
+				res = getOriginalFullName(hvar).toString('_')
+			else
 				res = hvar.name
 			return VHDLUtils.getVHDLName(VHDLUtils.unescapeVHDLName(res) + "_array")
 		}
 
+		/**
+		 * The VHDL type of the variables of a declaration, or of the elements
+		 * of its array variables. Returns null when the type has no VHDL
+		 * representation.
+		 */
+		def static SubtypeIndication getElementType(HDLVariableDeclaration obj) {
+			val HDLAnnotation typeAnno = HDLQuery.select(typeof(HDLAnnotation)).from(obj).where(HDLAnnotation.fName).
+				isEqualTo(VHDLType.toString).first
+			val HDLPrimitive primitive = obj.primitive
+			if (typeAnno !== null) {
+				val typeValue = typeAnno.value
+				if (typeValue.endsWith("<>")) {
+					val HDLQualifiedName value = new HDLQualifiedName(typeValue.substring(0, typeValue.length - 2))
+					val SubtypeIndication type = new EnumerationType(value.lastSegment)
+					val width = primitive.width
+					if (width !== null) {
+						val Range range = VHDLCompilationScope.current.getRange(width, obj, Direction.DOWNTO)
+						return new IndexSubtypeIndication(type, range)
+					}
+					return type
+				}
+				return new EnumerationType(new HDLQualifiedName(typeValue).lastSegment)
+			}
+			if (primitive !== null)
+				return VHDLCastsLibrary.getType(primitive)
+			val resolved = obj.resolveTypeForced("VHDL")
+			if (resolved instanceof HDLEnum)
+				return new EnumerationType(VHDLUtils.getVHDLName("$enum_" + resolved.name))
+			return null
+		}
+
+		def static List<DiscreteRange<?>> getArrayRanges(HDLVariable hvar, HDLVariableDeclaration obj) {
+			val ranges = new LinkedList<DiscreteRange<?>>
+			for (HDLExpression arrayWidth : hvar.dimensions) {
+				val Range range = VHDLCompilationScope.current.getRange(arrayWidth, obj, Range.Direction.TO)
+				ranges.add(range)
+			}
+			return ranges
+		}
+
 		def dispatch VHDLContext toVHDL(HDLVariableDeclaration obj, int pid) {
 			val VHDLContext res = new VHDLContext
 			val HDLPrimitive primitive = obj.primitive
-			var SubtypeIndication type = null
 			var HDLExpression resetValue = null
 			val HDLAnnotation memAnno = HDLQuery.select(typeof(HDLAnnotation)).from(obj).where(HDLAnnotation.fName).
 				isEqualTo(memory.toString).first
@@ -401,49 +441,34 @@ class VHDLStatementExtension {
 			if (obj.register !== null) {
 				resetValue = obj.register.resetValue
 			}
+			val SubtypeIndication type = getElementType(obj)
 			var Expression<?> otherValue = Aggregate.OTHERS(new CharacterLiteral('0'.charAt(0)))
 			if (typeAnno !== null) {
 				val typeValue = typeAnno.value
-				if (typeValue.endsWith("<>")) {
-					val HDLQualifiedName value = new HDLQualifiedName(typeValue.substring(0, typeValue.length - 2))
-					res.addImport(value)
-					type = new EnumerationType(value.lastSegment)
-					var HDLRange range = null;
-					val width = primitive.width
-					if (width !== null) {
-						range = new HDLRange().setFrom(HDLArithOp.subtract(width, 1)).setTo(HDLLiteral.get(0));
-						range = range.copyDeepFrozen(obj);
-						type = new IndexSubtypeIndication(type, range.toVHDL(Direction.DOWNTO))
-					}
-				} else {
-					val HDLQualifiedName value = new HDLQualifiedName(typeValue)
-					res.addImport(value)
-					type = new EnumerationType(value.lastSegment)
-				}
-			} else {
-				if (primitive !== null) {
-					type = VHDLCastsLibrary.getType(primitive)
-				} else {
-					val resolved = obj.resolveTypeForced("VHDL")
-					if (resolved instanceof HDLEnum) {
-						val HDLEnum hEnum = resolved as HDLEnum
-						type = new EnumerationType(VHDLUtils.getVHDLName("$enum_" + hEnum.name))
-						var idx = 0;
-						val resVal = ConstantEvaluate.valueOf(resetValue,
-							new HDLEvaluationContext => [enumAsInt = true])
-						if (resVal.present)
-							idx = resVal.get.intValue
-						val enumReset = new HDLEnumRef().setHEnum(hEnum.asRef).setVar(hEnum.enums.get(idx).asRef)
-						enumReset.freeze(hEnum)
-						otherValue = enumReset.toVHDL
-						if (!(resetValue instanceof HDLArrayInit))
-							resetValue = enumReset
-					}
+				if (typeValue.endsWith("<>"))
+					res.addImport(new HDLQualifiedName(typeValue.substring(0, typeValue.length - 2)))
+				else
+					res.addImport(new HDLQualifiedName(typeValue))
+			} else if (primitive === null) {
+				val resolved = obj.resolveTypeForced("VHDL")
+				if (resolved instanceof HDLEnum) {
+					val HDLEnum hEnum = resolved as HDLEnum
+					var idx = 0;
+					val resVal = ConstantEvaluate.valueOf(resetValue, new HDLEvaluationContext => [enumAsInt = true])
+					if (resVal.present)
+						idx = resVal.get.intValue
+					val enumReset = new HDLEnumRef().setHEnum(hEnum.asRef).setVar(hEnum.enums.get(idx).asRef)
+					enumReset.freeze(hEnum)
+					otherValue = enumReset.toVHDL
+					if (!(resetValue instanceof HDLArrayInit))
+						resetValue = enumReset
 				}
 			}
 			if (type !== null) {
+				val scope = VHDLCompilationScope.current
 				for (HDLVariable hvar : obj.variables) {
-					handleVariable(hvar, type, obj, res, resetValue, otherValue, pid)
+					if (!scope.isDead(hvar))
+						handleVariable(hvar, type, obj, res, resetValue, otherValue, pid)
 				}
 			}
 			return res.attachComment(obj)
@@ -454,19 +479,9 @@ class VHDLStatementExtension {
 			val boolean noExplicitResetVar = (hvar.getAnnotation(VHDLNoExplicitReset) !== null) ||
 				(hvar.getAnnotation(memory) !== null)
 			var SubtypeIndication varType = type
-			if (hvar.dimensions.size != 0) {
-				val ranges = new LinkedList<DiscreteRange<?>>
-				for (HDLExpression arrayWidth : hvar.dimensions) {
-					val HDLExpression newWidth = HDLArithOp.subtract(arrayWidth, 1)
-					val Range range = new HDLRange().setFrom(HDLLiteral.get(0)).setTo(newWidth).copyDeepFrozen(obj).
-						toVHDL(Range.Direction.TO)
-					ranges.add(range)
-				}
-				val boolean external = obj.isExternal
-				val ConstrainedArray arrType = new ConstrainedArray(getArrayRefName(hvar, external), type, ranges)
-				res.addTypeDeclaration(arrType, external)
-				varType = arrType
-			}
+			if (hvar.dimensions.size != 0)
+				varType = VHDLCompilationScope.current.declareArrayType(hvar, type, getArrayRanges(hvar, obj),
+					obj.isExternal, res)
 			var name = hvar.name
 			if (hvar.getMeta(HDLInterfaceInstantiation.ORIG_NAME) !== null) {
 				name = hvar.getMeta(HDLInterfaceInstantiation.ORIG_NAME)
@@ -558,7 +573,7 @@ class VHDLStatementExtension {
 			var Optional<BigInteger> width = Optional.absent
 			val type = TypeExtension.typeOf(hCaseExp)
 			if (type.present && type.get instanceof HDLPrimitive) {
-				width = ConstantEvaluate.valueOf((type.get as HDLPrimitive).width, null)
+				width = VHDLCompilationScope.current.valueOf((type.get as HDLPrimitive).width)
 				if (!width.present)
 					throw new HDLCodeGenerationException(type.get, "Switch cases need a constant width", "VHDL")
 			}
@@ -627,9 +642,11 @@ class VHDLStatementExtension {
 			var SequentialStatement sa = null
 			var HDLReference ref = obj.left
 			val hvar = (ref as HDLResolvedRef).resolveVarForced("VHDL")
+			if (VHDLCompilationScope.current.isDead(hvar))
+				return context
 			val ArrayList<HDLExpression> dim = hvar.dimensions
 			val assTarget = ref.toVHDL
-			var Expression<?> value = obj.right.toVHDL
+			var Expression<?> value = null
 			if (dim.size != 0 && ref.classType == HDLClass.HDLVariableRef) {
 				val HDLVariableRef varRef = ref as HDLVariableRef
 				for (HDLExpression exp : varRef.array) {
@@ -642,15 +659,18 @@ class VHDLStatementExtension {
 						value = new TypeConversion(new UnresolvedType(typeAnno.value), obj.right.toVHDL)
 					} else {
 						val HDLVariableDeclaration hvd = hvar.getContainer(typeof(HDLVariableDeclaration))
-						value = new TypeConversion(new UnresolvedType(getArrayRefName(hvar, hvd.isExternal)),
+						value = new TypeConversion(new UnresolvedType(VHDLCompilationScope.current.getArrayTypeName(hvar, hvd.isExternal)),
 							obj.right.toVHDL)
 					}
 				}
 			}
-			if (hvar.getAnnotation(HDLBuiltInAnnotations.memory) !== null)
-				sa = new VariableAssignment(assTarget as VariableAssignmentTarget, value)
-			else
-				sa = new SignalAssignment(assTarget as SignalAssignmentTarget, value)
+			if (value === null && obj.right instanceof HDLTernary && VHDLCompilationScope.current.settings.ternariesAsIf)
+				sa = createConditionalAssignment(hvar, assTarget, obj.right as HDLTernary)
+			else {
+				if (value === null)
+					value = obj.right.toVHDL
+				sa = createAssignment(hvar, assTarget, value)
+			}
 			val HDLRegisterConfig config = hvar.registerConfig
 			if (config !== null)
 				context.addClockedStatement(config, sa)
@@ -659,6 +679,38 @@ class VHDLStatementExtension {
 			return context.attachComment(obj)
 		}
 
+		def private SequentialStatement createAssignment(HDLVariable hvar, Expression<?> assTarget, Expression<?> value) {
+			if (hvar.getAnnotation(HDLBuiltInAnnotations.memory) !== null)
+				return new VariableAssignment(assTarget as VariableAssignmentTarget, value)
+			return new SignalAssignment(assTarget as SignalAssignmentTarget, value)
+		}
+
+		/**
+		 * Assigns a ternary with an if statement instead of the ternaryOp function. Ternaries in the else
+		 * branch become elsif parts, ternaries in the then branch nested if statements.
+		 */
+		def private SequentialStatement createConditionalAssignment(HDLVariable hvar, Expression<?> assTarget,
+			HDLTernary ternary) {
+			val IfStatement ifs = new IfStatement(ternary.ifExpr.toVHDL)
+			ifs.statements.add(createBranchAssignment(hvar, assTarget, ternary.thenExpr))
+			var HDLExpression elseExpr = ternary.elseExpr
+			while (elseExpr instanceof HDLTernary) {
+				val HDLTernary elsif = elseExpr as HDLTernary
+				val IfStatement.ElsifPart part = ifs.createElsifPart(elsif.ifExpr.toVHDL)
+				part.statements.add(createBranchAssignment(hvar, assTarget, elsif.thenExpr))
+				elseExpr = elsif.elseExpr
+			}
+			ifs.elseStatements.add(createBranchAssignment(hvar, assTarget, elseExpr))
+			return ifs
+		}
+
+		def private SequentialStatement createBranchAssignment(HDLVariable hvar, Expression<?> assTarget,
+			HDLExpression exp) {
+			if (exp instanceof HDLTernary)
+				return createConditionalAssignment(hvar, assTarget, exp)
+			return createAssignment(hvar, assTarget, exp.toVHDL)
+		}
+
 		def dispatch VHDLContext toVHDL(HDLForLoop obj, int pid) {
 			val VHDLContext context = new VHDLContext
 			for (HDLStatement stmnt : obj.dos) {
@@ -28,10 +28,13 @@ package org.pshdl.generator.vhdl;
 
 import java.math.BigInteger;
 import java.util.Set;
-import java.util.regex.Pattern;
 
 import org.pshdl.model.HDLInterfaceRef;
+import org.pshdl.model.utils.HDLQualifiedName;
 
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Sets;
 
 import de.upb.hni.vmagic.expression.Literal;
@@ -39,32 +42,88 @@ import de.upb.hni.vmagic.literal.BinaryLiteral;
 import de.upb.hni.vmagic.literal.HexLiteral;
 
 public class VHDLUtils {
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	private static final int MAX_FAST_WIDTH = 64;
+
+	/**
+	 * The all zero literals for each width up to {@link #MAX_FAST_WIDTH}, those
+	 * are very common as reset values and in switch labels.
+	 */
+	private static final Literal[] ZERO_BIN = new Literal[MAX_FAST_WIDTH + 1];
+	private static final Literal[] ZERO_HEX = new Literal[(MAX_FAST_WIDTH / 4) + 1];
+	static {
+		for (int i = 1; i <= MAX_FAST_WIDTH; i++) {
+			ZERO_BIN[i] = new BinaryLiteral(toBinaryString(i, 0));
+		}
+		for (int i = 1; i <= (MAX_FAST_WIDTH / 4); i++) {
+			ZERO_HEX[i] = new HexLiteral(toHexString(i * 4, 0));
+		}
+	}
+
+	/**
+	 * Creates a binary literal of exactly widthInt bits. Negative values are
+	 * represented in two's complement.
+	 */
 	public static Literal toBinaryLiteral(int widthInt, BigInteger lit) {
-		StringBuilder sb = new StringBuilder(widthInt);
-		if (lit.signum() < 0) {
-			final BigInteger mask = BigInteger.ONE.shiftLeft(widthInt).subtract(BigInteger.ONE);
-			sb.append(lit.abs().and(mask).xor(mask).add(BigInteger.ONE).toString(2));
-		} else {
-			final String binLit = lit.toString(2);
-			sb = zeroFill(widthInt, binLit);
+		if ((widthInt > 0) && (widthInt <= MAX_FAST_WIDTH)) {
+			final long value = lit.longValue();
+			if (lowBits(widthInt, value) == 0)
+				return ZERO_BIN[widthInt];
+			return new BinaryLiteral(toBinaryString(widthInt, value));
 		}
-		// System.out.println("VHDLUtils.toBinaryLiteral()" + sb);
-		final String string = sb.toString();
-		return new BinaryLiteral(string);
+		final String binLit = twosComplement(widthInt, lit).toString(2);
+		return new BinaryLiteral(zeroFill(widthInt, binLit).toString());
 	}
 
+	/**
+	 * Creates a hex literal of exactly widthInt bits. If the width is not a
+	 * multiple of 4, a binary literal is created instead.
+	 */
 	public static Literal toHexLiteral(int widthInt, BigInteger lit) {
-		StringBuilder sb = new StringBuilder(widthInt / 4);
 		if ((widthInt % 4) != 0)
 			return toBinaryLiteral(widthInt, lit);
+		if ((widthInt > 0) && (widthInt <= MAX_FAST_WIDTH)) {
+			final long value = lit.longValue();
+			if (lowBits(widthInt, value) == 0)
+				return ZERO_HEX[widthInt / 4];
+			return new HexLiteral(toHexString(widthInt, value));
+		}
+		final String hexLit = twosComplement(widthInt, lit).toString(16);
+		return new HexLiteral(zeroFill(widthInt / 4, hexLit).toString());
+	}
+
+	private static BigInteger twosComplement(int widthInt, BigInteger lit) {
 		if (lit.signum() < 0) {
 			final BigInteger mask = BigInteger.ONE.shiftLeft(widthInt).subtract(BigInteger.ONE);
-			sb.append(lit.abs().and(mask).xor(mask).add(BigInteger.ONE).toString(16));
-		} else {
-			sb = zeroFill(widthInt / 4, lit.toString(16));
+			return lit.and(mask);
 		}
-		// System.out.println("VHDLUtils.toBinaryLiteral()" + sb);
-		return new HexLiteral(sb.toString());
+		return lit;
+	}
+
+	private static long lowBits(int widthInt, long value) {
+		if (widthInt == 64)
+			return value;
+		return value & ((1L << widthInt) - 1);
+	}
+
+	private static String toBinaryString(int widthInt, long value) {
+		final char[] chars = new char[widthInt];
+		long v = value;
+		for (int i = widthInt - 1; i >= 0; i--) {
+			chars[i] = (char) ('0' + (v & 1));
+			v >>>= 1;
+		}
+		return new String(chars);
+	}
+
+	private static String toHexString(int widthInt, long value) {
+		final char[] chars = new char[widthInt / 4];
+		long v = value;
+		for (int i = chars.length - 1; i >= 0; i--) {
+			chars[i] = HEX_DIGITS[(int) (v & 0xF)];
+			v >>>= 4;
+		}
+		return new String(chars);
 	}
 
 	private static StringBuilder zeroFill(int widthInt, String binLit) {
@@ -95,18 +154,149 @@ public class VHDLUtils {
 		}
 	}
 
-	private static final Pattern vhdlName = Pattern.compile("[a-zA-Z]\\w*");
+	/**
+	 * The keywords hashed into a table without collisions, see
+	 * {@link #keywordSlot(String)}. The seed has been chosen so that every
+	 * keyword ends up in its own slot.
+	 */
+	private static final int KEYWORD_SEED = 1981;
+	private static final String[] KEYWORD_TABLE = new String[512];
+	private static final int MAX_KEYWORD_LENGTH;
+	static {
+		int maxLength = 0;
+		for (final String keyword : keywords) {
+			final int slot = keywordSlot(keyword);
+			if (KEYWORD_TABLE[slot] != null)
+				throw new IllegalStateException("Keyword " + keyword + " collides with " + KEYWORD_TABLE[slot]);
+			KEYWORD_TABLE[slot] = keyword;
+			maxLength = Math.max(maxLength, keyword.length());
+		}
+		MAX_KEYWORD_LENGTH = maxLength;
+	}
+
+	private static int keywordSlot(String name) {
+		int h = 0;
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if ((c >= 'A') && (c <= 'Z')) {
+				c += 'a' - 'A';
+			}
+			h = (h * KEYWORD_SEED) + c;
+		}
+		h ^= h >>> 16;
+		return h & (KEYWORD_TABLE.length - 1);
+	}
 
+	private static String keywordCandidate(String name) {
+		if (name.length() > MAX_KEYWORD_LENGTH)
+			return null;
+		return KEYWORD_TABLE[keywordSlot(name)];
+	}
+
+	private static final int NAME_CACHE_SIZE = 16 * 1024;
+	private static final Cache<Object, String> nameCache = CacheBuilder.newBuilder().maximumSize(NAME_CACHE_SIZE).build();
+
+	private static enum NameKind {
+		MAP, DASH, PACKAGE
+	}
+
+	private static final class NameKey {
+		private final NameKind kind;
+		private final Object first;
+		private final Object second;
+
+		public NameKey(NameKind kind, Object first, Object second) {
+			this.kind = kind;
+			this.first = first;
+			this.second = second;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = kind.hashCode();
+			result = (31 * result) + first.hashCode();
+			result = (31 * result) + ((second == null) ? 0 : second.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof NameKey))
+				return false;
+			final NameKey other = (NameKey) obj;
+			return (kind == other.kind) && first.equals(other.first) && Objects.equal(second, other.second);
+		}
+	}
+
+	/**
+	 * Returns a name that can be used as VHDL identifier. Names that are not
+	 * valid basic identifiers or that are keywords are turned into extended
+	 * identifiers.
+	 */
 	public static String getVHDLName(String name) {
-		if ((name.charAt(0) == '\\') && (name.charAt(name.length() - 1) == '\\'))
-			return name;
-		if (keywordSet.contains(name) || name.matches("[_]+"))
-			return "\\" + name + "\\";
-		if (vhdlName.matcher(name).matches())
+		String res = nameCache.getIfPresent(name);
+		if (res == null) {
+			res = mangle(name);
+			nameCache.put(name, res);
+		}
+		return res;
+	}
+
+	private static String mangle(String name) {
+		final int length = name.length();
+		final char first = name.charAt(0);
+		if ((first == '\\') && (name.charAt(length - 1) == '\\'))
 			return name;
+		if (!isLetter(first))
+			return escape(name);
+		for (int i = 1; i < length; i++) {
+			final char c = name.charAt(i);
+			if (!isLetter(c) && !((c >= '0') && (c <= '9')) && (c != '_'))
+				return escape(name);
+		}
+		if (name.equals(keywordCandidate(name)))
+			return escape(name);
+		return name;
+	}
+
+	private static boolean isLetter(char c) {
+		return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z'));
+	}
+
+	private static String escape(String name) {
 		return "\\" + name + "\\";
 	}
 
+	/**
+	 * The name of an entity that is created for the given fully qualified
+	 * name
+	 */
+	public static String dashString(HDLQualifiedName name) {
+		final NameKey key = new NameKey(NameKind.DASH, name, null);
+		String res = nameCache.getIfPresent(key);
+		if (res == null) {
+			res = name.toString('_');
+			nameCache.put(key, res);
+		}
+		return res;
+	}
+
+	/**
+	 * The name of the package that holds the declarations of the entity with
+	 * the given fully qualified name
+	 */
+	public static String getPackageName(HDLQualifiedName entityName) {
+		final NameKey key = new NameKey(NameKind.PACKAGE, entityName, null);
+		String res = nameCache.getIfPresent(key);
+		if (res == null) {
+			res = dashString(entityName) + "Pkg";
+			nameCache.put(key, res);
+		}
+		return res;
+	}
+
 	public static void main(String[] args) {
 		final long a = -4373652435859253850L;
 		final BigInteger lit = BigInteger.valueOf(a);
@@ -136,7 +326,8 @@ public class VHDLUtils {
 	}
 
 	public static boolean isKeyword(String name) {
-		return keywordSet.contains(name.toLowerCase());
+		final String keyword = keywordCandidate(name);
+		return (keyword != null) && keyword.equalsIgnoreCase(name);
 	}
 
 	public static String mapName(HDLInterfaceRef ref) {
@@ -146,7 +337,13 @@ public class VHDLUtils {
 	}
 
 	public static String mapName(String hIf, String hVar) {
-		return getVHDLName("$map_" + hIf + "_" + hVar);
+		final NameKey key = new NameKey(NameKind.MAP, hIf, hVar);
+		String res = nameCache.getIfPresent(key);
+		if (res == null) {
+			res = mangle("$map_" + hIf + "_" + hVar);
+			nameCache.put(key, res);
+		}
+		return res;
 	}
 
 	public static String unescapeVHDLName(String string) {
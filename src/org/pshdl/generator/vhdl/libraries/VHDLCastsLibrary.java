@@ -27,24 +27,25 @@
 package org.pshdl.generator.vhdl.libraries;
 
 import java.math.BigInteger;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import org.pshdl.generator.vhdl.VHDLCompilationScope;
 import org.pshdl.generator.vhdl.VHDLExpressionExtension;
-import org.pshdl.model.HDLArithOp;
 import org.pshdl.model.HDLClass;
 import org.pshdl.model.HDLExpression;
 import org.pshdl.model.HDLLiteral;
 import org.pshdl.model.HDLLiteral.HDLLiteralPresentation;
 import org.pshdl.model.HDLPrimitive;
 import org.pshdl.model.HDLPrimitive.HDLPrimitiveType;
-import org.pshdl.model.HDLRange;
 import org.pshdl.model.IHDLObject;
-import org.pshdl.model.evaluation.ConstantEvaluate;
 import org.pshdl.model.utils.HDLCodeGenerationException;
 
 import com.google.common.base.Optional;
 
 import de.upb.hni.vmagic.AssociationElement;
+import de.upb.hni.vmagic.Range;
 import de.upb.hni.vmagic.Range.Direction;
 import de.upb.hni.vmagic.builtin.NumericStd;
 import de.upb.hni.vmagic.builtin.Standard;
@@ -55,6 +56,7 @@ import de.upb.hni.vmagic.declaration.PackageDeclarativeItem;
 import de.upb.hni.vmagic.expression.Aggregate;
 import de.upb.hni.vmagic.expression.Expression;
 import de.upb.hni.vmagic.expression.FunctionCall;
+import de.upb.hni.vmagic.expression.TypeConversion;
 import de.upb.hni.vmagic.libraryunit.PackageDeclaration;
 import de.upb.hni.vmagic.libraryunit.UseClause;
 import de.upb.hni.vmagic.literal.CharacterLiteral;
@@ -67,8 +69,8 @@ public class VHDLCastsLibrary {
 	public static final FunctionDeclaration ABS = new FunctionDeclaration("abs", Standard.INTEGER, new Constant("left", Standard.INTEGER));
 	public static final FunctionDeclaration STR_TO_UNSIGNED = new FunctionDeclaration("strToUnsigned", NumericStd.UNSIGNED, new Constant("s", Standard.STRING));
 
+	public static final String PACKAGE_NAME = "pshdl.Casts";
 	public static final UseClause USE_CLAUSE = new UseClause("work.Casts.ALL");
-	public static final PackageDeclaration PACKAGE;
 	public static final FunctionDeclaration RESIZE_SLV = new FunctionDeclaration("resizeSLV", StdLogic1164.STD_LOGIC_VECTOR, new Constant("s", StdLogic1164.STD_LOGIC_VECTOR),
 			new Constant("newSize", Standard.NATURAL));
 	public static final FunctionDeclaration RESIZE_BIT = new FunctionDeclaration("resizeBit", StdLogic1164.STD_LOGIC, new Constant("s", StdLogic1164.STD_LOGIC),
@@ -82,23 +84,41 @@ public class VHDLCastsLibrary {
 	public static final FunctionDeclaration RESIZE_NATURAL = new FunctionDeclaration("resizeNatural", NumericStd.UNSIGNED, new Constant("s", Standard.NATURAL),
 			new Constant("newSize", Standard.NATURAL));
 
+	/**
+	 * The cast functions that have been requested so far. The map is indexed
+	 * by the source type, the array by the ordinal of the target type.
+	 */
+	private static final EnumMap<HDLPrimitiveType, AtomicReferenceArray<FunctionDeclaration>> castFunctions = new EnumMap<>(HDLPrimitiveType.class);
 	static {
-		PACKAGE = new PackageDeclaration("pshdl.Casts");
-		final List<PackageDeclarativeItem> declarations = PACKAGE.getDeclarations();
+		final int types = HDLPrimitiveType.values().length;
+		for (final HDLPrimitiveType from : HDLPrimitiveType.values()) {
+			castFunctions.put(from, new AtomicReferenceArray<FunctionDeclaration>(types));
+		}
+	}
+
+	/**
+	 * The complete package is only created when it is requested
+	 */
+	private static final class PackageHolder {
+		private static final PackageDeclaration PACKAGE = createPackage();
+	}
+
+	/**
+	 * Returns the declaration of the pshdl.Casts package with all cast
+	 * functions
+	 */
+	public static PackageDeclaration getPackage() {
+		return PackageHolder.PACKAGE;
+	}
+
+	private static PackageDeclaration createPackage() {
+		final PackageDeclaration pd = new PackageDeclaration(PACKAGE_NAME);
+		final List<PackageDeclarativeItem> declarations = pd.getDeclarations();
 		final HDLPrimitiveType[] values = HDLPrimitiveType.values();
 		for (final HDLPrimitiveType left : values) {
 			for (final HDLPrimitiveType right : values) {
-				if (right == left) {
-					continue;
-				}
-				if (HDLPrimitive.isAny(left) || HDLPrimitive.isAny(right)) {
-					continue;
-				}
-				final String name = getCastName(left, right);
-				final SubtypeIndication rt = getType(right);
-				final SubtypeIndication lt = getType(left);
-				if ((lt != null) && (rt != null)) {
-					final FunctionDeclaration fd = new FunctionDeclaration(name, rt, new Constant("arg", lt));
+				final FunctionDeclaration fd = getCastFunction(left, right);
+				if (fd != null) {
 					declarations.add(fd);
 				}
 			}
@@ -114,6 +134,28 @@ public class VHDLCastsLibrary {
 		declarations.add(MAX);
 		declarations.add(MIN);
 		declarations.add(ABS);
+		return pd;
+	}
+
+	/**
+	 * Returns the declaration of the function that casts from one type to
+	 * another. The declaration is created on first use.
+	 *
+	 * @return the declaration or <code>null</code> if there is no such cast
+	 */
+	public static FunctionDeclaration getCastFunction(HDLPrimitiveType from, HDLPrimitiveType to) {
+		if ((from == to) || HDLPrimitive.isAny(from) || HDLPrimitive.isAny(to))
+			return null;
+		final AtomicReferenceArray<FunctionDeclaration> row = castFunctions.get(from);
+		final FunctionDeclaration fd = row.get(to.ordinal());
+		if (fd != null)
+			return fd;
+		final SubtypeIndication rt = getType(to);
+		final SubtypeIndication lt = getType(from);
+		if ((lt == null) || (rt == null))
+			return null;
+		row.compareAndSet(to.ordinal(), null, new FunctionDeclaration(getCastName(from, to), rt, new Constant("arg", lt)));
+		return row.get(to.ordinal());
 	}
 
 	public static SubtypeIndication getType(HDLPrimitiveType left) {
@@ -139,10 +181,9 @@ public class VHDLCastsLibrary {
 
 	public static SubtypeIndication getType(HDLPrimitive left) {
 		final HDLExpression width = left.getWidth();
-		HDLRange range = null;
+		Range range = null;
 		if (width != null) {
-			range = new HDLRange().setFrom(HDLArithOp.subtract(width, 1)).setTo(HDLLiteral.get(0));
-			range = range.copyDeepFrozen(left);
+			range = VHDLCompilationScope.current().getRange(width, left, Direction.DOWNTO);
 		}
 		switch (left.getType()) {
 		case BOOL:
@@ -152,15 +193,15 @@ public class VHDLCastsLibrary {
 		case BITVECTOR:
 			if (range == null)
 				throw new IllegalArgumentException("Can not have null width");
-			return StdLogic1164.STD_LOGIC_VECTOR(VHDLExpressionExtension.INST.toVHDL(range, Direction.DOWNTO));
+			return StdLogic1164.STD_LOGIC_VECTOR(range);
 		case INT:
 			if (range == null)
 				throw new IllegalArgumentException("Can not have null width");
-			return NumericStd.SIGNED(VHDLExpressionExtension.INST.toVHDL(range, Direction.DOWNTO));
+			return NumericStd.SIGNED(range);
 		case UINT:
 			if (range == null)
 				throw new IllegalArgumentException("Can not have null width");
-			return NumericStd.UNSIGNED(VHDLExpressionExtension.INST.toVHDL(range, Direction.DOWNTO));
+			return NumericStd.UNSIGNED(range);
 		case INTEGER:
 			return Standard.INTEGER;
 		case NATURAL:
@@ -184,14 +225,19 @@ public class VHDLCastsLibrary {
 
 	public static TargetType getResize(Expression exp, HDLPrimitive actualType, HDLExpression tWidth) {
 		if (actualType.getWidth() != null) {
-			final Optional<BigInteger> bt = ConstantEvaluate.valueOf(actualType.getWidth(), null);
+			final Optional<BigInteger> bt = VHDLCompilationScope.current().valueOf(actualType.getWidth());
 			if (bt.isPresent()) {
-				final Optional<BigInteger> btw = ConstantEvaluate.valueOf(tWidth, null);
+				final Optional<BigInteger> btw = VHDLCompilationScope.current().valueOf(tWidth);
 				if (btw.isPresent() && bt.get().equals(btw.get()))
 					return new TargetType(exp, actualType.getType());
 			}
 		}
 		final Expression width = VHDLExpressionExtension.vhdlOf(tWidth);
+		if (VHDLCompilationScope.current().getSettings().inlineCasts) {
+			final TargetType inline = getInlineResize(exp, actualType.getType(), width);
+			if (inline != null)
+				return inline;
+		}
 		FunctionCall resize = null;
 		HDLPrimitiveType resType = actualType.getType();
 		switch (actualType.getType()) {
@@ -227,6 +273,85 @@ public class VHDLCastsLibrary {
 		return new TargetType(resize, resType);
 	}
 
+	/**
+	 * The numeric_std functions that are used when casts are inlined
+	 */
+	private static final FunctionDeclaration NUMERIC_RESIZE_SIGNED = new FunctionDeclaration("resize", NumericStd.SIGNED, new Constant("arg", NumericStd.SIGNED),
+			new Constant("new_size", Standard.NATURAL));
+	private static final FunctionDeclaration NUMERIC_RESIZE_UNSIGNED = new FunctionDeclaration("resize", NumericStd.UNSIGNED, new Constant("arg", NumericStd.UNSIGNED),
+			new Constant("new_size", Standard.NATURAL));
+	private static final FunctionDeclaration NUMERIC_TO_INTEGER_SIGNED = new FunctionDeclaration("to_integer", Standard.INTEGER, new Constant("arg", NumericStd.SIGNED));
+	private static final FunctionDeclaration NUMERIC_TO_INTEGER_UNSIGNED = new FunctionDeclaration("to_integer", Standard.NATURAL, new Constant("arg", NumericStd.UNSIGNED));
+
+	/**
+	 * Resizes with numeric_std. Bits are not covered, they still use the
+	 * wrapper.
+	 *
+	 * @return the resized expression or <code>null</code> if the type can not
+	 *         be resized inline
+	 */
+	private static TargetType getInlineResize(Expression exp, HDLPrimitiveType type, Expression width) {
+		switch (type) {
+		case NATURAL:
+			return new TargetType(inlineCall(NumericStd.TO_UNSIGNED, exp, width), HDLPrimitiveType.UINT);
+		case INTEGER:
+			return new TargetType(inlineCall(NumericStd.TO_SIGNED, exp, width), HDLPrimitiveType.INT);
+		case INT:
+			return new TargetType(inlineCall(NUMERIC_RESIZE_SIGNED, exp, width), HDLPrimitiveType.INT);
+		case UINT:
+			return new TargetType(inlineCall(NUMERIC_RESIZE_UNSIGNED, exp, width), HDLPrimitiveType.UINT);
+		case BITVECTOR:
+			final Expression resized = inlineCall(NUMERIC_RESIZE_UNSIGNED, new TypeConversion(NumericStd.UNSIGNED, exp), width);
+			return new TargetType(new TypeConversion(StdLogic1164.STD_LOGIC_VECTOR, resized), HDLPrimitiveType.BITVECTOR);
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Casts with type conversions and numeric_std functions. Only casts that
+	 * keep the width are covered.
+	 *
+	 * @return the converted expression or <code>null</code> if the cast can
+	 *         not be done inline
+	 */
+	private static Expression getInlineCast(Expression exp, HDLPrimitiveType from, HDLPrimitiveType to) {
+		switch (from) {
+		case BITVECTOR:
+			if (to == HDLPrimitiveType.UINT)
+				return new TypeConversion(NumericStd.UNSIGNED, exp);
+			if (to == HDLPrimitiveType.INT)
+				return new TypeConversion(NumericStd.SIGNED, exp);
+			break;
+		case UINT:
+			if (to == HDLPrimitiveType.BITVECTOR)
+				return new TypeConversion(StdLogic1164.STD_LOGIC_VECTOR, exp);
+			if (to == HDLPrimitiveType.INT)
+				return new TypeConversion(NumericStd.SIGNED, exp);
+			if ((to == HDLPrimitiveType.NATURAL) || (to == HDLPrimitiveType.INTEGER))
+				return inlineCall(NUMERIC_TO_INTEGER_UNSIGNED, exp);
+			break;
+		case INT:
+			if (to == HDLPrimitiveType.BITVECTOR)
+				return new TypeConversion(StdLogic1164.STD_LOGIC_VECTOR, exp);
+			if (to == HDLPrimitiveType.UINT)
+				return new TypeConversion(NumericStd.UNSIGNED, exp);
+			if (to == HDLPrimitiveType.INTEGER)
+				return inlineCall(NUMERIC_TO_INTEGER_SIGNED, exp);
+			break;
+		default:
+		}
+		return null;
+	}
+
+	private static FunctionCall inlineCall(Function function, Expression... args) {
+		final FunctionCall call = new FunctionCall(function);
+		for (final Expression arg : args) {
+			call.getParameters().add(new AssociationElement(arg));
+		}
+		return call;
+	}
+
 	public static Expression handleLiteral(IHDLObject container, HDLLiteral lit, HDLPrimitive targetType, HDLExpression tWidth) {
 		if ((container != null) && (container.getClassType() == HDLClass.HDLArithOp)) {
 			if ((targetType.getType() == HDLPrimitiveType.INTEGER) || (targetType.getType() == HDLPrimitiveType.NATURAL))
@@ -237,7 +362,7 @@ public class VHDLCastsLibrary {
 			throw new HDLCodeGenerationException(lit, "Literal could not be evaluated to constant", "VHDL");
 		Optional<BigInteger> width = Optional.absent();
 		if (tWidth != null) {
-			width = ConstantEvaluate.valueOf(tWidth, null);
+			width = VHDLCompilationScope.current().valueOf(tWidth);
 		}
 		switch (targetType.getType()) {
 		case BIT:
@@ -317,9 +442,17 @@ public class VHDLCastsLibrary {
 			break;
 		default:
 		}
-		final String name = getCastName(fromType, to);
-		final Function resolve = PACKAGE.getScope().resolve(name, Function.class);
-		final FunctionCall call = new FunctionCall(resolve);
+		if (fromType == to)
+			return vhdlExpr;
+		if (VHDLCompilationScope.current().getSettings().inlineCasts) {
+			final Expression inline = getInlineCast(vhdlExpr, fromType, to);
+			if (inline != null)
+				return inline;
+		}
+		final FunctionDeclaration function = getCastFunction(fromType, to);
+		if (function == null)
+			throw new IllegalArgumentException("Can not cast from " + from + " to " + to);
+		final FunctionCall call = new FunctionCall(function);
 		call.getParameters().add(new AssociationElement(vhdlExpr));
 		return call;
 	}
@@ -26,45 +26,112 @@
  ******************************************************************************/
 package org.pshdl.generator.vhdl.libraries;
 
+import java.math.BigInteger;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import org.pshdl.generator.vhdl.VHDLCompilationScope;
+import org.pshdl.generator.vhdl.VHDLUtils;
+import org.pshdl.model.HDLClass;
+import org.pshdl.model.HDLExpression;
 import org.pshdl.model.HDLPrimitive;
 import org.pshdl.model.HDLPrimitive.HDLPrimitiveType;
 import org.pshdl.model.HDLShiftOp.HDLShiftOpType;
+import org.pshdl.model.HDLVariable;
+import org.pshdl.model.HDLVariableDeclaration;
+import org.pshdl.model.HDLVariableDeclaration.HDLDirection;
+import org.pshdl.model.HDLVariableRef;
+import org.pshdl.model.types.builtIn.HDLBuiltInAnnotationProvider.HDLBuiltInAnnotations;
+
+import com.google.common.base.Optional;
 
 import de.upb.hni.vmagic.AssociationElement;
+import de.upb.hni.vmagic.Range;
+import de.upb.hni.vmagic.Range.Direction;
+import de.upb.hni.vmagic.builtin.NumericStd;
 import de.upb.hni.vmagic.builtin.Standard;
-import de.upb.hni.vmagic.declaration.Function;
+import de.upb.hni.vmagic.builtin.StdLogic1164;
 import de.upb.hni.vmagic.declaration.FunctionDeclaration;
 import de.upb.hni.vmagic.declaration.PackageDeclarativeItem;
+import de.upb.hni.vmagic.expression.Concatenate;
 import de.upb.hni.vmagic.expression.Expression;
 import de.upb.hni.vmagic.expression.FunctionCall;
+import de.upb.hni.vmagic.expression.Name;
+import de.upb.hni.vmagic.expression.TypeConversion;
 import de.upb.hni.vmagic.libraryunit.PackageDeclaration;
 import de.upb.hni.vmagic.libraryunit.UseClause;
+import de.upb.hni.vmagic.literal.DecimalLiteral;
 import de.upb.hni.vmagic.object.Constant;
+import de.upb.hni.vmagic.object.Signal;
+import de.upb.hni.vmagic.object.Slice;
 import de.upb.hni.vmagic.type.SubtypeIndication;
 
 public class VHDLShiftLibrary {
+	public static final String PACKAGE_NAME = "pshdl.ShiftOps";
 	public static final UseClause USE_CLAUSE = new UseClause("work.ShiftOps.ALL");
-	public static final PackageDeclaration PACKAGE;
+
+	/**
+	 * The shift functions that have been requested so far. The map is indexed
+	 * by the operation, the array by the ordinal of the shifted type.
+	 */
+	private static final EnumMap<HDLShiftOpType, AtomicReferenceArray<FunctionDeclaration>> shiftFunctions = new EnumMap<>(HDLShiftOpType.class);
 	static {
-		PACKAGE = new PackageDeclaration("pshdl.ShiftOps");
-		final List<PackageDeclarativeItem> declarations = PACKAGE.getDeclarations();
+		final int types = HDLPrimitiveType.values().length;
+		for (final HDLShiftOpType op : HDLShiftOpType.values()) {
+			shiftFunctions.put(op, new AtomicReferenceArray<FunctionDeclaration>(types));
+		}
+	}
+
+	/**
+	 * The complete package is only created when it is requested
+	 */
+	private static final class PackageHolder {
+		private static final PackageDeclaration PACKAGE = createPackage();
+	}
+
+	/**
+	 * Returns the declaration of the pshdl.ShiftOps package with all shift
+	 * functions
+	 */
+	public static PackageDeclaration getPackage() {
+		return PackageHolder.PACKAGE;
+	}
+
+	private static PackageDeclaration createPackage() {
+		final PackageDeclaration pd = new PackageDeclaration(PACKAGE_NAME);
+		final List<PackageDeclarativeItem> declarations = pd.getDeclarations();
 		final HDLPrimitiveType[] values = HDLPrimitiveType.values();
 		for (final HDLShiftOpType op : HDLShiftOpType.values()) {
 			for (final HDLPrimitiveType left : values) {
-				final String name = getFunctionName(op, left);
-				if (HDLPrimitive.isAny(left)) {
-					continue;
-				}
-				final SubtypeIndication lt = VHDLCastsLibrary.getType(left);
-				if (lt != null) {
-					final FunctionDeclaration fd = new FunctionDeclaration(name, VHDLCastsLibrary.getType(left), new Constant("arg", VHDLCastsLibrary.getType(left)),
-							new Constant("s", Standard.NATURAL));
+				final FunctionDeclaration fd = getShiftFunction(op, left);
+				if (fd != null) {
 					declarations.add(fd);
 				}
 			}
 		}
+		return pd;
+	}
+
+	/**
+	 * Returns the declaration of the function that shifts a value of the
+	 * given type. The declaration is created on first use.
+	 *
+	 * @return the declaration or <code>null</code> if the type can not be
+	 *         shifted
+	 */
+	public static FunctionDeclaration getShiftFunction(HDLShiftOpType op, HDLPrimitiveType left) {
+		if (HDLPrimitive.isAny(left))
+			return null;
+		final AtomicReferenceArray<FunctionDeclaration> row = shiftFunctions.get(op);
+		final FunctionDeclaration fd = row.get(left.ordinal());
+		if (fd != null)
+			return fd;
+		final SubtypeIndication lt = VHDLCastsLibrary.getType(left);
+		if (lt == null)
+			return null;
+		row.compareAndSet(left.ordinal(), null, new FunctionDeclaration(getFunctionName(op, left), lt, new Constant("arg", lt), new Constant("s", Standard.NATURAL)));
+		return row.get(left.ordinal());
 	}
 
 	private static String getFunctionName(HDLShiftOpType op, HDLPrimitiveType left) {
@@ -74,11 +141,130 @@ public class VHDLShiftLibrary {
 	}
 
 	public static Expression shift(Expression vhdlExpr, Expression amount, HDLPrimitiveType type, HDLShiftOpType op) {
-		final String name = getFunctionName(op, type);
-		final Function resolve = PACKAGE.getScope().resolve(name, Function.class);
-		final FunctionCall call = new FunctionCall(resolve);
+		final FunctionDeclaration function = getShiftFunction(op, type);
+		if (function == null)
+			throw new IllegalArgumentException("Can not shift type " + type);
+		final FunctionCall call = new FunctionCall(function);
 		call.getParameters().add(new AssociationElement(vhdlExpr));
 		call.getParameters().add(new AssociationElement(amount));
 		return call;
 	}
+
+	private static final FunctionDeclaration SHIFT_LEFT_SIGNED = new FunctionDeclaration("shift_left", NumericStd.SIGNED, new Constant("arg", NumericStd.SIGNED),
+			new Constant("count", Standard.NATURAL));
+	private static final FunctionDeclaration SHIFT_LEFT_UNSIGNED = new FunctionDeclaration("shift_left", NumericStd.UNSIGNED, new Constant("arg", NumericStd.UNSIGNED),
+			new Constant("count", Standard.NATURAL));
+	private static final FunctionDeclaration SHIFT_RIGHT_SIGNED = new FunctionDeclaration("shift_right", NumericStd.SIGNED, new Constant("arg", NumericStd.SIGNED),
+			new Constant("count", Standard.NATURAL));
+	private static final FunctionDeclaration SHIFT_RIGHT_UNSIGNED = new FunctionDeclaration("shift_right", NumericStd.UNSIGNED, new Constant("arg", NumericStd.UNSIGNED),
+			new Constant("count", Standard.NATURAL));
+
+	/**
+	 * Shifts by a constant amount without calling a pshdl.ShiftOps function.
+	 * Signed and unsigned values are shifted with the numeric_std functions.
+	 * Bit vectors are sliced and concatenated with zeros when they are plain
+	 * signals declared by the generator, otherwise they are converted and
+	 * shifted with numeric_std as well.
+	 *
+	 * @param vhdlExpr
+	 *            the value to shift
+	 * @param left
+	 *            the PSHDL expression vhdlExpr was generated from
+	 * @param amount
+	 *            the constant shift amount
+	 * @param type
+	 *            the type of the shifted value
+	 * @param op
+	 *            the shift operation
+	 * @return the shifted expression or <code>null</code> if the shift can
+	 *         not be lowered
+	 */
+	public static Expression shiftConstant(Expression vhdlExpr, HDLExpression left, BigInteger amount, HDLPrimitive type, HDLShiftOpType op) {
+		if ((amount.signum() < 0) || (amount.bitLength() > 31))
+			return null;
+		final int n = amount.intValue();
+		switch (type.getType()) {
+		case INT:
+			switch (op) {
+			case SLL:
+				return numericCall(SHIFT_LEFT_SIGNED, vhdlExpr, n);
+			case SRA:
+				return numericCall(SHIFT_RIGHT_SIGNED, vhdlExpr, n);
+			case SRL:
+				final Expression shifted = numericCall(SHIFT_RIGHT_UNSIGNED, new TypeConversion(NumericStd.UNSIGNED, vhdlExpr), n);
+				return new TypeConversion(NumericStd.SIGNED, shifted);
+			}
+			return null;
+		case UINT:
+			if (op == HDLShiftOpType.SLL)
+				return numericCall(SHIFT_LEFT_UNSIGNED, vhdlExpr, n);
+			return numericCall(SHIFT_RIGHT_UNSIGNED, vhdlExpr, n);
+		case BITVECTOR:
+			if (isDeclaredSignal(vhdlExpr, left)) {
+				final Expression sliced = sliceShift((Name) vhdlExpr, n, type, op);
+				if (sliced != null)
+					return sliced;
+			}
+			switch (op) {
+			case SLL:
+				return new TypeConversion(StdLogic1164.STD_LOGIC_VECTOR, numericCall(SHIFT_LEFT_UNSIGNED, new TypeConversion(NumericStd.UNSIGNED, vhdlExpr), n));
+			case SRL:
+				return new TypeConversion(StdLogic1164.STD_LOGIC_VECTOR, numericCall(SHIFT_RIGHT_UNSIGNED, new TypeConversion(NumericStd.UNSIGNED, vhdlExpr), n));
+			case SRA:
+				return new TypeConversion(StdLogic1164.STD_LOGIC_VECTOR, numericCall(SHIFT_RIGHT_SIGNED, new TypeConversion(NumericStd.SIGNED, vhdlExpr), n));
+			}
+			return null;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Checks whether vhdlExpr is a whole signal that the generator declared
+	 * itself. Only those are known to have the range
+	 * <code>width-1 downto 0</code>. Array elements, bit accesses, memories,
+	 * generics and signals with a user supplied VHDL type are excluded.
+	 */
+	private static boolean isDeclaredSignal(Expression vhdlExpr, HDLExpression left) {
+		if (!(vhdlExpr instanceof Signal) || (left.getClassType() != HDLClass.HDLVariableRef))
+			return false;
+		final HDLVariableRef ref = (HDLVariableRef) left;
+		if (!ref.getArray().isEmpty() || !ref.getBits().isEmpty())
+			return false;
+		final Optional<HDLVariable> hvar = ref.resolveVar();
+		if (!hvar.isPresent() || !hvar.get().getDimensions().isEmpty())
+			return false;
+		if ((hvar.get().getAnnotation(HDLBuiltInAnnotations.memory) != null) || (hvar.get().getAnnotation(HDLBuiltInAnnotations.VHDLType) != null))
+			return false;
+		final HDLVariableDeclaration hvd = hvar.get().getContainer(HDLVariableDeclaration.class);
+		return (hvd != null) && (hvd.getDirection() != HDLDirection.PARAMETER) && (hvd.getDirection() != HDLDirection.CONSTANT);
+	}
+
+	/**
+	 * Shifts a declared bit vector signal by slicing it. This is only possible
+	 * for logical shifts by an amount smaller than the known width.
+	 */
+	private static Expression sliceShift(Name name, int n, HDLPrimitive type, HDLShiftOpType op) {
+		if (op == HDLShiftOpType.SRA)
+			return null;
+		final Optional<BigInteger> width = VHDLCompilationScope.current().valueOf(type.getWidth());
+		if (!width.isPresent() || (width.get().bitLength() > 31))
+			return null;
+		final int w = width.get().intValue();
+		if (n == 0)
+			return name;
+		if (n >= w)
+			return VHDLUtils.toBinaryLiteral(w, BigInteger.ZERO);
+		final Expression zeros = VHDLUtils.toBinaryLiteral(n, BigInteger.ZERO);
+		if (op == HDLShiftOpType.SLL)
+			return new Concatenate(new Slice(name, new Range(new DecimalLiteral((w - 1) - n), Direction.DOWNTO, new DecimalLiteral(0))), zeros);
+		return new Concatenate(zeros, new Slice(name, new Range(new DecimalLiteral(w - 1), Direction.DOWNTO, new DecimalLiteral(n))));
+	}
+
+	private static FunctionCall numericCall(FunctionDeclaration function, Expression vhdlExpr, int n) {
+		final FunctionCall call = new FunctionCall(function);
+		call.getParameters().add(new AssociationElement(vhdlExpr));
+		call.getParameters().add(new AssociationElement(new DecimalLiteral(n)));
+		return call;
+	}
 }
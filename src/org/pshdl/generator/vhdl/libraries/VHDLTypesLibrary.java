@@ -39,6 +39,7 @@ import de.upb.hni.vmagic.object.Constant;
 import de.upb.hni.vmagic.type.SubtypeIndication;
 
 public class VHDLTypesLibrary {
+	public static final String PACKAGE_NAME = "pshdl.Types";
 	public static final UseClause USE_CLAUSE = new UseClause("work.Types.ALL");
 	public static final PackageDeclaration PACKAGE;
 	public static final FunctionDeclaration TERNARY_INTEGER;
@@ -51,7 +52,7 @@ public class VHDLTypesLibrary {
 	public static final FunctionDeclaration MSB_OF;
 	public static final FunctionDeclaration WIDTH_OF;
 	static {
-		PACKAGE = new PackageDeclaration("pshdl.Types");
+		PACKAGE = new PackageDeclaration(PACKAGE_NAME);
 		final List<PackageDeclarativeItem> declarations = PACKAGE.getDeclarations();
 		TERNARY_INTEGER = createTernaryOp(declarations, Standard.INTEGER);
 		TERNARY_SL = createTernaryOp(declarations, StdLogic1164.STD_LOGIC);
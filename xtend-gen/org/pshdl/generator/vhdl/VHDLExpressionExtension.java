@@ -51,7 +51,6 @@ import de.upb.hni.vmagic.expression.Name;
 import de.upb.hni.vmagic.expression.Not;
 import de.upb.hni.vmagic.expression.NotEquals;
 import de.upb.hni.vmagic.expression.Or;
-import de.upb.hni.vmagic.expression.Parentheses;
 import de.upb.hni.vmagic.expression.Pow;
 import de.upb.hni.vmagic.expression.Rem;
 import de.upb.hni.vmagic.expression.Subtract;
@@ -76,7 +75,9 @@ import org.eclipse.xtext.xbase.lib.IterableExtensions;
 import org.eclipse.xtext.xbase.lib.ObjectExtensions;
 import org.eclipse.xtext.xbase.lib.Procedures.Procedure1;
 import org.eclipse.xtext.xbase.lib.Procedures.Procedure2;
+import org.pshdl.generator.vhdl.VHDLCompilationScope;
 import org.pshdl.generator.vhdl.VHDLFunctions;
+import org.pshdl.generator.vhdl.VHDLPrecedence;
 import org.pshdl.generator.vhdl.VHDLUtils;
 import org.pshdl.generator.vhdl.libraries.VHDLCastsLibrary;
 import org.pshdl.generator.vhdl.libraries.VHDLShiftLibrary;
@@ -272,8 +273,9 @@ public class VHDLExpressionExtension {
     Expression res = this.toVHDL(cats.get(0));
     cats.remove(0);
     for (final HDLExpression cat : cats) {
-      Expression _vHDL = this.toVHDL(cat);
-      Concatenate _concatenate = new Concatenate(res, _vHDL);
+      Expression _left = VHDLPrecedence.left(Concatenate.class, res);
+      Expression _right = VHDLPrecedence.right(Concatenate.class, this.toVHDL(cat));
+      Concatenate _concatenate = new Concatenate(_left, _right);
       res = _concatenate;
     }
     return res;
@@ -285,14 +287,14 @@ public class VHDLExpressionExtension {
     boolean _matched = false;
     if (Objects.equal(type, HDLManip.HDLManipType.ARITH_NEG)) {
       _matched=true;
-      Expression _vHDL = this.toVHDL(obj.getTarget());
-      return new Minus(_vHDL);
+      Expression _unary = VHDLPrecedence.unary(Minus.class, this.toVHDL(obj.getTarget()));
+      return new Minus(_unary);
     }
     if (!_matched) {
       if (((type == HDLManip.HDLManipType.LOGIC_NEG) || (type == HDLManip.HDLManipType.BIT_NEG))) {
         _matched=true;
-        Expression _vHDL_1 = this.toVHDL(obj.getTarget());
-        return new Not(_vHDL_1);
+        Expression _unary_1 = VHDLPrecedence.unary(Not.class, this.toVHDL(obj.getTarget()));
+        return new Not(_unary_1);
       }
     }
     if (!_matched) {
@@ -408,9 +410,19 @@ public class VHDLExpressionExtension {
   }
   
   protected Expression _toVHDL(final HDLShiftOp obj) {
+    final VHDLCompilationScope scope = VHDLCompilationScope.current();
     HDLType _typeOfForced = TypeExtension.typeOfForced(obj.getLeft(), "VHDL");
     final HDLPrimitive type = ((HDLPrimitive) _typeOfForced);
-    return VHDLShiftLibrary.shift(this.toVHDL(obj.getLeft()), this.toVHDL(obj.getRight()), type.getType(), obj.getType());
+    final Expression left = this.toVHDL(obj.getLeft());
+    final Optional<BigInteger> amount = scope.valueOf(obj.getRight());
+    boolean _isPresent = amount.isPresent();
+    if (_isPresent) {
+      final Expression shifted = VHDLShiftLibrary.shiftConstant(left, obj.getLeft(), amount.get(), type, obj.getType());
+      if ((shifted != null)) {
+        return shifted;
+      }
+    }
+    return VHDLShiftLibrary.shift(left, this.toVHDL(obj.getRight()), type.getType(), obj.getType());
   }
   
   protected Expression _toVHDL(final HDLEqualityOp obj) {
@@ -418,35 +430,29 @@ public class VHDLExpressionExtension {
     if (_type != null) {
       switch (_type) {
         case EQ:
-          Expression _vHDL = this.toVHDL(obj.getLeft());
-          Expression _vHDL_1 = this.toVHDL(obj.getRight());
-          Equals _equals = new Equals(_vHDL, _vHDL_1);
-          return new Parentheses(_equals);
+          Expression _left = VHDLPrecedence.left(Equals.class, this.toVHDL(obj.getLeft()));
+          Expression _right = VHDLPrecedence.right(Equals.class, this.toVHDL(obj.getRight()));
+          return new Equals(_left, _right);
         case GREATER_EQ:
-          Expression _vHDL_2 = this.toVHDL(obj.getLeft());
-          Expression _vHDL_3 = this.toVHDL(obj.getRight());
-          GreaterEquals _greaterEquals = new GreaterEquals(_vHDL_2, _vHDL_3);
-          return new Parentheses(_greaterEquals);
+          Expression _left_1 = VHDLPrecedence.left(GreaterEquals.class, this.toVHDL(obj.getLeft()));
+          Expression _right_1 = VHDLPrecedence.right(GreaterEquals.class, this.toVHDL(obj.getRight()));
+          return new GreaterEquals(_left_1, _right_1);
         case GREATER:
-          Expression _vHDL_4 = this.toVHDL(obj.getLeft());
-          Expression _vHDL_5 = this.toVHDL(obj.getRight());
-          GreaterThan _greaterThan = new GreaterThan(_vHDL_4, _vHDL_5);
-          return new Parentheses(_greaterThan);
+          Expression _left_2 = VHDLPrecedence.left(GreaterThan.class, this.toVHDL(obj.getLeft()));
+          Expression _right_2 = VHDLPrecedence.right(GreaterThan.class, this.toVHDL(obj.getRight()));
+          return new GreaterThan(_left_2, _right_2);
         case LESS_EQ:
-          Expression _vHDL_6 = this.toVHDL(obj.getLeft());
-          Expression _vHDL_7 = this.toVHDL(obj.getRight());
-          LessEquals _lessEquals = new LessEquals(_vHDL_6, _vHDL_7);
-          return new Parentheses(_lessEquals);
+          Expression _left_3 = VHDLPrecedence.left(LessEquals.class, this.toVHDL(obj.getLeft()));
+          Expression _right_3 = VHDLPrecedence.right(LessEquals.class, this.toVHDL(obj.getRight()));
+          return new LessEquals(_left_3, _right_3);
         case LESS:
-          Expression _vHDL_8 = this.toVHDL(obj.getLeft());
-          Expression _vHDL_9 = this.toVHDL(obj.getRight());
-          LessThan _lessThan = new LessThan(_vHDL_8, _vHDL_9);
-          return new Parentheses(_lessThan);
+          Expression _left_4 = VHDLPrecedence.left(LessThan.class, this.toVHDL(obj.getLeft()));
+          Expression _right_4 = VHDLPrecedence.right(LessThan.class, this.toVHDL(obj.getRight()));
+          return new LessThan(_left_4, _right_4);
         case NOT_EQ:
-          Expression _vHDL_10 = this.toVHDL(obj.getLeft());
-          Expression _vHDL_11 = this.toVHDL(obj.getRight());
-          NotEquals _notEquals = new NotEquals(_vHDL_10, _vHDL_11);
-          return new Parentheses(_notEquals);
+          Expression _left_5 = VHDLPrecedence.left(NotEquals.class, this.toVHDL(obj.getLeft()));
+          Expression _right_5 = VHDLPrecedence.right(NotEquals.class, this.toVHDL(obj.getRight()));
+          return new NotEquals(_left_5, _right_5);
         default:
           break;
       }
@@ -460,27 +466,24 @@ public class VHDLExpressionExtension {
     boolean _matched = false;
     if (((type == HDLBitOp.HDLBitOpType.AND) || (type == HDLBitOp.HDLBitOpType.LOGI_AND))) {
       _matched=true;
-      Expression _vHDL = this.toVHDL(obj.getLeft());
-      Expression _vHDL_1 = this.toVHDL(obj.getRight());
-      And _and = new And(_vHDL, _vHDL_1);
-      return new Parentheses(_and);
+      Expression _left = VHDLPrecedence.left(And.class, this.toVHDL(obj.getLeft()));
+      Expression _right = VHDLPrecedence.right(And.class, this.toVHDL(obj.getRight()));
+      return new And(_left, _right);
     }
     if (!_matched) {
       if (((type == HDLBitOp.HDLBitOpType.OR) || (type == HDLBitOp.HDLBitOpType.LOGI_OR))) {
         _matched=true;
-        Expression _vHDL_2 = this.toVHDL(obj.getLeft());
-        Expression _vHDL_3 = this.toVHDL(obj.getRight());
-        Or _or = new Or(_vHDL_2, _vHDL_3);
-        return new Parentheses(_or);
+        Expression _left_1 = VHDLPrecedence.left(Or.class, this.toVHDL(obj.getLeft()));
+        Expression _right_1 = VHDLPrecedence.right(Or.class, this.toVHDL(obj.getRight()));
+        return new Or(_left_1, _right_1);
       }
     }
     if (!_matched) {
       if (Objects.equal(type, HDLBitOp.HDLBitOpType.XOR)) {
         _matched=true;
-        Expression _vHDL_4 = this.toVHDL(obj.getLeft());
-        Expression _vHDL_5 = this.toVHDL(obj.getRight());
-        Xor _xor = new Xor(_vHDL_4, _vHDL_5);
-        return new Parentheses(_xor);
+        Expression _left_2 = VHDLPrecedence.left(Xor.class, this.toVHDL(obj.getLeft()));
+        Expression _right_2 = VHDLPrecedence.right(Xor.class, this.toVHDL(obj.getRight()));
+        return new Xor(_left_2, _right_2);
       }
     }
     throw new IllegalArgumentException(("Not supported:" + obj));
@@ -491,35 +494,29 @@ public class VHDLExpressionExtension {
     if (_type != null) {
       switch (_type) {
         case PLUS:
-          Expression _vHDL = this.toVHDL(obj.getLeft());
-          Expression _vHDL_1 = this.toVHDL(obj.getRight());
-          Add _add = new Add(_vHDL, _vHDL_1);
-          return new Parentheses(_add);
+          Expression _left = VHDLPrecedence.left(Add.class, this.toVHDL(obj.getLeft()));
+          Expression _right = VHDLPrecedence.right(Add.class, this.toVHDL(obj.getRight()));
+          return new Add(_left, _right);
         case MINUS:
-          Expression _vHDL_2 = this.toVHDL(obj.getLeft());
-          Expression _vHDL_3 = this.toVHDL(obj.getRight());
-          Subtract _subtract = new Subtract(_vHDL_2, _vHDL_3);
-          return new Parentheses(_subtract);
+          Expression _left_1 = VHDLPrecedence.left(Subtract.class, this.toVHDL(obj.getLeft()));
+          Expression _right_1 = VHDLPrecedence.right(Subtract.class, this.toVHDL(obj.getRight()));
+          return new Subtract(_left_1, _right_1);
         case DIV:
-          Expression _vHDL_4 = this.toVHDL(obj.getLeft());
-          Expression _vHDL_5 = this.toVHDL(obj.getRight());
-          Divide _divide = new Divide(_vHDL_4, _vHDL_5);
-          return new Parentheses(_divide);
+          Expression _left_2 = VHDLPrecedence.left(Divide.class, this.toVHDL(obj.getLeft()));
+          Expression _right_2 = VHDLPrecedence.right(Divide.class, this.toVHDL(obj.getRight()));
+          return new Divide(_left_2, _right_2);
         case MUL:
-          Expression _vHDL_6 = this.toVHDL(obj.getLeft());
-          Expression _vHDL_7 = this.toVHDL(obj.getRight());
-          Multiply _multiply = new Multiply(_vHDL_6, _vHDL_7);
-          return new Parentheses(_multiply);
+          Expression _left_3 = VHDLPrecedence.left(Multiply.class, this.toVHDL(obj.getLeft()));
+          Expression _right_3 = VHDLPrecedence.right(Multiply.class, this.toVHDL(obj.getRight()));
+          return new Multiply(_left_3, _right_3);
         case MOD:
-          Expression _vHDL_8 = this.toVHDL(obj.getLeft());
-          Expression _vHDL_9 = this.toVHDL(obj.getRight());
-          Rem _rem = new Rem(_vHDL_8, _vHDL_9);
-          return new Parentheses(_rem);
+          Expression _left_4 = VHDLPrecedence.left(Rem.class, this.toVHDL(obj.getLeft()));
+          Expression _right_4 = VHDLPrecedence.right(Rem.class, this.toVHDL(obj.getRight()));
+          return new Rem(_left_4, _right_4);
         case POW:
-          Expression _vHDL_10 = this.toVHDL(obj.getLeft());
-          Expression _vHDL_11 = this.toVHDL(obj.getRight());
-          Pow _pow = new Pow(_vHDL_10, _vHDL_11);
-          return new Parentheses(_pow);
+          Expression _left_5 = VHDLPrecedence.left(Pow.class, this.toVHDL(obj.getLeft()));
+          Expression _right_5 = VHDLPrecedence.right(Pow.class, this.toVHDL(obj.getRight()));
+          return new Pow(_left_5, _right_5);
         default:
           break;
       }
@@ -34,6 +34,7 @@ import de.upb.hni.vmagic.VhdlElement;
 import de.upb.hni.vmagic.VhdlFile;
 import de.upb.hni.vmagic.builtin.NumericStd;
 import de.upb.hni.vmagic.builtin.StdLogic1164;
+import de.upb.hni.vmagic.concurrent.ConcurrentStatement;
 import de.upb.hni.vmagic.concurrent.ProcessStatement;
 import de.upb.hni.vmagic.declaration.ConstantDeclaration;
 import de.upb.hni.vmagic.declaration.DeclarativeItem;
@@ -62,6 +63,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -74,15 +78,16 @@ import org.eclipse.xtext.xbase.lib.CollectionExtensions;
 import org.eclipse.xtext.xbase.lib.Conversions;
 import org.eclipse.xtext.xbase.lib.Extension;
 import org.eclipse.xtext.xbase.lib.InputOutput;
+import org.pshdl.generator.vhdl.VHDLCompilationScope;
 import org.pshdl.generator.vhdl.VHDLContext;
 import org.pshdl.generator.vhdl.VHDLExpressionExtension;
+import org.pshdl.generator.vhdl.VHDLGenerationSettings;
 import org.pshdl.generator.vhdl.VHDLStatementExtension;
 import org.pshdl.generator.vhdl.VHDLUtils;
 import org.pshdl.generator.vhdl.WaitSeacher;
 import org.pshdl.generator.vhdl.libraries.VHDLCastsLibrary;
 import org.pshdl.generator.vhdl.libraries.VHDLShiftLibrary;
 import org.pshdl.generator.vhdl.libraries.VHDLTypesLibrary;
-import org.pshdl.model.HDLAnnotation;
 import org.pshdl.model.HDLAssignment;
 import org.pshdl.model.HDLClass;
 import org.pshdl.model.HDLDeclaration;
@@ -118,6 +123,17 @@ public class VHDLPackageExtension {
   public static VHDLPackageExtension INST = new VHDLPackageExtension();
   
   public List<LibraryUnit> toVHDL(final HDLUnit obj) {
+    final VHDLCompilationScope scope = VHDLCompilationScope.open();
+    scope.enterUnit(obj);
+    try {
+      return this.createVHDL(obj);
+    } finally {
+      scope.leaveUnit();
+      scope.close();
+    }
+  }
+  
+  private List<LibraryUnit> createVHDL(final HDLUnit obj) {
     final List<LibraryUnit> res = new LinkedList<LibraryUnit>();
     final HDLQualifiedName entityName = FullNameExtension.fullNameOf(obj);
     String _dashString = this.dashString(entityName);
@@ -216,34 +232,74 @@ public class VHDLPackageExtension {
     a.getDeclarations().addAll(((Collection) _values));
     a.getDeclarations().addAll(((List) unit.internals));
     a.getStatements().addAll(unit.concurrentStatements);
+    final VHDLGenerationSettings settings = VHDLCompilationScope.current().getSettings();
+    if (settings.eliminateDeadSignals) {
+      unit.removeEmptyStatements();
+    }
     Set<Map.Entry<Integer, LinkedList<SequentialStatement>>> _entrySet = unit.unclockedStatements.entrySet();
     for (final Map.Entry<Integer, LinkedList<SequentialStatement>> uc : _entrySet) {
       {
-        final ProcessStatement ps = new ProcessStatement();
-        ps.getSensitivityList().addAll(this.createSensitivyList(unit, (uc.getKey()).intValue()));
-        ps.getStatements().addAll(uc.getValue());
-        boolean _isEmpty = ps.getSensitivityList().isEmpty();
-        if (_isEmpty) {
-          final WaitSeacher ssv = new WaitSeacher();
-          final Consumer<SequentialStatement> _function = (SequentialStatement it) -> {
-            ssv.visit(it);
-          };
-          ps.getStatements().forEach(_function);
-          if ((!ssv.hasWait)) {
-            List<SequentialStatement> _statements_1 = ps.getStatements();
-            WaitStatement _waitStatement = new WaitStatement();
-            _statements_1.add(_waitStatement);
+        List<ConcurrentStatement> _xifexpression = null;
+        if (settings.concurrentAssignments) {
+          _xifexpression = unit.toConcurrentAssignments((uc.getKey()).intValue());
+        } else {
+          _xifexpression = null;
+        }
+        final List<ConcurrentStatement> concurrent = _xifexpression;
+        if ((concurrent != null)) {
+          a.getStatements().addAll(concurrent);
+        } else {
+          final ProcessStatement ps = new ProcessStatement();
+          ps.getSensitivityList().addAll(this.createSensitivyList(unit, (uc.getKey()).intValue()));
+          ps.getStatements().addAll(uc.getValue());
+          boolean _isEmpty = ps.getSensitivityList().isEmpty();
+          if (_isEmpty) {
+            final WaitSeacher ssv = new WaitSeacher();
+            final Consumer<SequentialStatement> _function = (SequentialStatement it) -> {
+              ssv.visit(it);
+            };
+            ps.getStatements().forEach(_function);
+            if ((!ssv.hasWait)) {
+              List<SequentialStatement> _statements_1 = ps.getStatements();
+              WaitStatement _waitStatement = new WaitStatement();
+              _statements_1.add(_waitStatement);
+            }
           }
+          a.getStatements().add(ps);
         }
-        a.getStatements().add(ps);
       }
     }
-    Set<Map.Entry<HDLRegisterConfig, LinkedList<SequentialStatement>>> _entrySet_1 = unit.clockedStatements.entrySet();
-    for (final Map.Entry<HDLRegisterConfig, LinkedList<SequentialStatement>> pc : _entrySet_1) {
-      {
-        final ProcessStatement ps = new ProcessStatement();
-        ps.getStatements().add(this.createIfStatement(obj, ps, pc.getKey(), pc.getValue(), unit));
-        a.getStatements().add(ps);
+    if (settings.mergeClockedProcesses) {
+      final Map<String, List<HDLRegisterConfig>> groups = new LinkedHashMap<String, List<HDLRegisterConfig>>();
+      Set<HDLRegisterConfig> _keySet = unit.clockedStatements.keySet();
+      for (final HDLRegisterConfig config : _keySet) {
+        {
+          Expression _vHDL = this.vee.toVHDL(config.getClk());
+          String _identifier = ((Signal) _vHDL).getIdentifier();
+          String _plus = (_identifier + ":");
+          HDLRegisterConfig.HDLRegClockType _clockType = config.getClockType();
+          final String key = (_plus + _clockType);
+          List<HDLRegisterConfig> group = groups.get(key);
+          if ((group == null)) {
+            LinkedList<HDLRegisterConfig> _linkedList = new LinkedList<HDLRegisterConfig>();
+            group = _linkedList;
+            groups.put(key, group);
+          }
+          group.add(config);
+        }
+      }
+      Collection<List<HDLRegisterConfig>> _values_1 = groups.values();
+      for (final List<HDLRegisterConfig> group : _values_1) {
+        a.getStatements().add(this.createMergedProcess(obj, group, unit));
+      }
+    } else {
+      Set<Map.Entry<HDLRegisterConfig, LinkedList<SequentialStatement>>> _entrySet_1 = unit.clockedStatements.entrySet();
+      for (final Map.Entry<HDLRegisterConfig, LinkedList<SequentialStatement>> pc : _entrySet_1) {
+        {
+          final ProcessStatement ps = new ProcessStatement();
+          ps.getStatements().add(this.createIfStatement(obj, ps, pc.getKey(), pc.getValue(), unit));
+          a.getStatements().add(ps);
+        }
       }
     }
     res.add(a);
@@ -305,15 +361,11 @@ public class VHDLPackageExtension {
   }
   
   public String getPackageName(final HDLQualifiedName entityName) {
-    StringConcatenation _builder = new StringConcatenation();
-    String _dashString = this.dashString(entityName);
-    _builder.append(_dashString);
-    _builder.append("Pkg");
-    return _builder.toString();
+    return VHDLUtils.getPackageName(entityName);
   }
   
   public String dashString(final HDLQualifiedName name) {
-    return name.toString("_".charAt(0));
+    return VHDLUtils.dashString(name);
   }
   
   public HDLQualifiedName getPackageNameRef(final HDLQualifiedName entityName) {
@@ -321,11 +373,7 @@ public class VHDLPackageExtension {
     if (_equals) {
       return entityName.skipFirst(1);
     }
-    StringConcatenation _builder = new StringConcatenation();
-    String _dashString = this.dashString(entityName);
-    _builder.append(_dashString);
-    _builder.append("Pkg");
-    return HDLQualifiedName.create("work", _builder.toString());
+    return HDLQualifiedName.create("work", this.getPackageName(entityName));
   }
   
   public HDLQualifiedName getNameRef(final HDLQualifiedName entityName) {
@@ -377,6 +425,7 @@ public class VHDLPackageExtension {
     if (_containsKey) {
       return Collections.<Signal>emptyList();
     }
+    final VHDLCompilationScope scope = VHDLCompilationScope.current();
     final List<Signal> sensitivity = new LinkedList<Signal>();
     final Set<String> vars = new TreeSet<String>();
     LinkedList<HDLStatement> _get = ctx.sensitiveStatements.get(Integer.valueOf(pid));
@@ -386,9 +435,7 @@ public class VHDLPackageExtension {
         for (final HDLVariableRef ref : refs) {
           {
             final HDLVariable hvar = ref.resolveVarForced("VHDL");
-            HDLAnnotation _annotation = hvar.getAnnotation(HDLBuiltInAnnotationProvider.HDLBuiltInAnnotations.memory);
-            boolean _tripleEquals = (_annotation == null);
-            if (_tripleEquals) {
+            if ((((hvar.getAnnotation(HDLBuiltInAnnotationProvider.HDLBuiltInAnnotations.memory) == null) && (!scope.isDead(hvar))) && (!scope.isInDeadAssignment(ref)))) {
               final IHDLObject container = hvar.getContainer();
               if ((container instanceof HDLVariableDeclaration)) {
                 final HDLVariableDeclaration hdv = ((HDLVariableDeclaration) container);
@@ -433,6 +480,42 @@ public class VHDLPackageExtension {
     return ((HDLResolvedRef) reference).resolveVar().get();
   }
   
+  /**
+   * Creates one process for all register configs that share the same clock and edge. Each asynchronous
+   * reset gets its own if statement, the synchronous configs share a single edge detection.
+   */
+  private ProcessStatement createMergedProcess(final HDLUnit hUnit, final List<HDLRegisterConfig> configs, final VHDLContext unit) {
+    final ProcessStatement ps = new ProcessStatement();
+    IfStatement syncIf = null;
+    for (final HDLRegisterConfig config : configs) {
+      {
+        final SequentialStatement stmnt = this.createIfStatement(hUnit, ps, config, unit.clockedStatements.get(config), unit);
+        HDLRegisterConfig.HDLRegSyncType _syncType = config.getSyncType();
+        boolean _tripleEquals = (_syncType == HDLRegisterConfig.HDLRegSyncType.ASYNC);
+        if (_tripleEquals) {
+          ps.getStatements().add(stmnt);
+        } else {
+          if ((syncIf == null)) {
+            syncIf = ((IfStatement) stmnt);
+            ps.getStatements().add(syncIf);
+          } else {
+            syncIf.getStatements().addAll(((IfStatement) stmnt).getStatements());
+          }
+        }
+      }
+    }
+    final Set<String> sensitive = new HashSet<String>();
+    final Iterator<Signal> iter = ps.getSensitivityList().iterator();
+    while (iter.hasNext()) {
+      boolean _add = sensitive.add(iter.next().getIdentifier());
+      boolean _not = (!_add);
+      if (_not) {
+        iter.remove();
+      }
+    }
+    return ps;
+  }
+  
   private SequentialStatement createIfStatement(final HDLUnit hUnit, final ProcessStatement ps, final HDLRegisterConfig config, final LinkedList<SequentialStatement> value, final VHDLContext unit) {
     final HDLRegisterConfig key = config.normalize();
     Expression _vHDL = this.vee.toVHDL(key.getClk());
@@ -482,6 +565,15 @@ public class VHDLPackageExtension {
   }
   
   public VhdlFile toVHDL(final HDLPackage obj) {
+    final VHDLCompilationScope scope = VHDLCompilationScope.open();
+    try {
+      return this.createVHDL(obj);
+    } finally {
+      scope.close();
+    }
+  }
+  
+  private VhdlFile createVHDL(final HDLPackage obj) {
     final VhdlFile res = new VhdlFile();
     PackageDeclaration pd = null;
     ArrayList<HDLDeclaration> _declarations = obj.getDeclarations();
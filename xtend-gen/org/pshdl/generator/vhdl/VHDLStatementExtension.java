@@ -57,7 +57,6 @@ import de.upb.hni.vmagic.statement.IfStatement;
 import de.upb.hni.vmagic.statement.SequentialStatement;
 import de.upb.hni.vmagic.statement.SignalAssignment;
 import de.upb.hni.vmagic.statement.VariableAssignment;
-import de.upb.hni.vmagic.type.ConstrainedArray;
 import de.upb.hni.vmagic.type.EnumerationType;
 import de.upb.hni.vmagic.type.IndexSubtypeIndication;
 import de.upb.hni.vmagic.type.SubtypeIndication;
@@ -82,6 +81,7 @@ import org.eclipse.xtext.xbase.lib.Functions.Function1;
 import org.eclipse.xtext.xbase.lib.IterableExtensions;
 import org.eclipse.xtext.xbase.lib.ObjectExtensions;
 import org.eclipse.xtext.xbase.lib.Procedures.Procedure1;
+import org.pshdl.generator.vhdl.VHDLCompilationScope;
 import org.pshdl.generator.vhdl.VHDLContext;
 import org.pshdl.generator.vhdl.VHDLExpressionExtension;
 import org.pshdl.generator.vhdl.VHDLFunctions;
@@ -117,6 +117,7 @@ import org.pshdl.model.HDLResolvedRef;
 import org.pshdl.model.HDLStatement;
 import org.pshdl.model.HDLSwitchCaseStatement;
 import org.pshdl.model.HDLSwitchStatement;
+import org.pshdl.model.HDLTernary;
 import org.pshdl.model.HDLType;
 import org.pshdl.model.HDLUnit;
 import org.pshdl.model.HDLVariable;
@@ -442,7 +443,7 @@ public class VHDLStatementExtension {
             boolean _isEmpty = typeAnno.isEmpty();
             if (_isEmpty) {
               final HDLQualifiedName name = VHDLPackageExtension.INST.getPackageNameRef(asRef).append(
-                VHDLStatementExtension.getArrayRefName(hvar, true));
+                VHDLArrayTypes.getTypeName(hvar, true));
               res.addImport(name);
               final HDLVariableDeclaration newHVD = hvd.setDirection(HDLVariableDeclaration.HDLDirection.INTERNAL).setVariables(
                 HDLObject.<HDLVariable>asList(
@@ -472,18 +473,19 @@ public class VHDLStatementExtension {
     return Character.toString(((char) (i + (integer).intValue())));
   }
   
+  public static HDLQualifiedName getOriginalFullName(final HDLVariable hvar) {
+    HDLQualifiedName _meta = hvar.<HDLQualifiedName>getMeta(VHDLStatementExtension.ORIGINAL_FULLNAME);
+    boolean _tripleNotEquals = (_meta != null);
+    if (_tripleNotEquals) {
+      return hvar.<HDLQualifiedName>getMeta(VHDLStatementExtension.ORIGINAL_FULLNAME);
+    }
+    return FullNameExtension.fullNameOf(hvar);
+  }
+  
   public static String getArrayRefName(final HDLVariable hvar, final boolean external) {
     String res = null;
     if (external) {
-      HDLQualifiedName fullName = null;
-      HDLQualifiedName _meta = hvar.<HDLQualifiedName>getMeta(VHDLStatementExtension.ORIGINAL_FULLNAME);
-      boolean _tripleNotEquals = (_meta != null);
-      if (_tripleNotEquals) {
-        fullName = hvar.<HDLQualifiedName>getMeta(VHDLStatementExtension.ORIGINAL_FULLNAME);
-      } else {
-        fullName = FullNameExtension.fullNameOf(hvar);
-      }
-      res = fullName.toString('_');
+      res = VHDLStatementExtension.getOriginalFullName(hvar).toString('_');
     } else {
       res = hvar.getName();
     }
@@ -492,10 +494,62 @@ public class VHDLStatementExtension {
     return VHDLUtils.getVHDLName(_plus);
   }
   
+  /**
+   * The VHDL type of the variables of a declaration, or of the elements
+   * of its array variables. Returns null when the type has no VHDL
+   * representation.
+   */
+  public static SubtypeIndication getElementType(final HDLVariableDeclaration obj) {
+    final HDLAnnotation typeAnno = HDLQuery.<HDLAnnotation>select(HDLAnnotation.class).from(obj).<String>where(HDLAnnotation.fName).isEqualTo(HDLBuiltInAnnotationProvider.HDLBuiltInAnnotations.VHDLType.toString()).getFirst();
+    final HDLPrimitive primitive = obj.getPrimitive();
+    if ((typeAnno != null)) {
+      final String typeValue = typeAnno.getValue();
+      boolean _endsWith = typeValue.endsWith("<>");
+      if (_endsWith) {
+        int _length = typeValue.length();
+        int _minus = (_length - 2);
+        String _substring = typeValue.substring(0, _minus);
+        final HDLQualifiedName value = new HDLQualifiedName(_substring);
+        String _lastSegment = value.getLastSegment();
+        final SubtypeIndication type = new EnumerationType(_lastSegment);
+        final HDLExpression width = primitive.getWidth();
+        if ((width != null)) {
+          final Range range = VHDLCompilationScope.current().getRange(width, obj, Range.Direction.DOWNTO);
+          return new IndexSubtypeIndication(type, range);
+        }
+        return type;
+      }
+      String _lastSegment_1 = new HDLQualifiedName(typeValue).getLastSegment();
+      return new EnumerationType(_lastSegment_1);
+    }
+    if ((primitive != null)) {
+      return VHDLCastsLibrary.getType(primitive);
+    }
+    final HDLType resolved = obj.resolveTypeForced("VHDL");
+    if ((resolved instanceof HDLEnum)) {
+      String _name = ((HDLEnum)resolved).getName();
+      String _plus = ("$enum_" + _name);
+      String _vHDLName = VHDLUtils.getVHDLName(_plus);
+      return new EnumerationType(_vHDLName);
+    }
+    return null;
+  }
+  
+  public static List<DiscreteRange<?>> getArrayRanges(final HDLVariable hvar, final HDLVariableDeclaration obj) {
+    final LinkedList<DiscreteRange<?>> ranges = new LinkedList<DiscreteRange<?>>();
+    ArrayList<HDLExpression> _dimensions = hvar.getDimensions();
+    for (final HDLExpression arrayWidth : _dimensions) {
+      {
+        final Range range = VHDLCompilationScope.current().getRange(arrayWidth, obj, Range.Direction.TO);
+        ranges.add(range);
+      }
+    }
+    return ranges;
+  }
+  
   protected VHDLContext _toVHDL(final HDLVariableDeclaration obj, final int pid) {
     final VHDLContext res = new VHDLContext();
     final HDLPrimitive primitive = obj.getPrimitive();
-    SubtypeIndication type = null;
     HDLExpression resetValue = null;
     final HDLAnnotation memAnno = HDLQuery.<HDLAnnotation>select(HDLAnnotation.class).from(obj).<String>where(HDLAnnotation.fName).isEqualTo(HDLBuiltInAnnotationProvider.HDLBuiltInAnnotations.memory.toString()).getFirst();
     if ((memAnno != null)) {
@@ -507,6 +561,7 @@ public class VHDLStatementExtension {
     if (_tripleNotEquals) {
       resetValue = obj.getRegister().getResetValue();
     }
+    final SubtypeIndication type = VHDLStatementExtension.getElementType(obj);
     char _charAt = "0".charAt(0);
     CharacterLiteral _characterLiteral = new CharacterLiteral(_charAt);
     Expression<?> otherValue = Aggregate.OTHERS(_characterLiteral);
@@ -517,39 +572,17 @@ public class VHDLStatementExtension {
         int _length = typeValue.length();
         int _minus = (_length - 2);
         String _substring = typeValue.substring(0, _minus);
-        final HDLQualifiedName value = new HDLQualifiedName(_substring);
-        res.addImport(value);
-        String _lastSegment = value.getLastSegment();
-        EnumerationType _enumerationType = new EnumerationType(_lastSegment);
-        type = _enumerationType;
-        HDLRange range = null;
-        final HDLExpression width = primitive.getWidth();
-        if ((width != null)) {
-          range = new HDLRange().setFrom(HDLArithOp.subtract(width, 1)).setTo(HDLLiteral.get(0));
-          range = range.copyDeepFrozen(obj);
-          Range _vHDL = this.vee.toVHDL(range, Range.Direction.DOWNTO);
-          IndexSubtypeIndication _indexSubtypeIndication = new IndexSubtypeIndication(type, _vHDL);
-          type = _indexSubtypeIndication;
-        }
+        HDLQualifiedName _hDLQualifiedName = new HDLQualifiedName(_substring);
+        res.addImport(_hDLQualifiedName);
       } else {
-        final HDLQualifiedName value_1 = new HDLQualifiedName(typeValue);
-        res.addImport(value_1);
-        String _lastSegment_1 = value_1.getLastSegment();
-        EnumerationType _enumerationType_1 = new EnumerationType(_lastSegment_1);
-        type = _enumerationType_1;
+        HDLQualifiedName _hDLQualifiedName_1 = new HDLQualifiedName(typeValue);
+        res.addImport(_hDLQualifiedName_1);
       }
     } else {
-      if ((primitive != null)) {
-        type = VHDLCastsLibrary.getType(primitive);
-      } else {
+      if ((primitive == null)) {
         final HDLType resolved = obj.resolveTypeForced("VHDL");
         if ((resolved instanceof HDLEnum)) {
           final HDLEnum hEnum = ((HDLEnum) resolved);
-          String _name = hEnum.getName();
-          String _plus = ("$enum_" + _name);
-          String _vHDLName = VHDLUtils.getVHDLName(_plus);
-          EnumerationType _enumerationType_2 = new EnumerationType(_vHDLName);
-          type = _enumerationType_2;
           int idx = 0;
           HDLEvaluationContext _hDLEvaluationContext = new HDLEvaluationContext();
           final Procedure1<HDLEvaluationContext> _function = (HDLEvaluationContext it) -> {
@@ -571,9 +604,14 @@ public class VHDLStatementExtension {
       }
     }
     if ((type != null)) {
+      final VHDLCompilationScope scope = VHDLCompilationScope.current();
       ArrayList<HDLVariable> _variables = obj.getVariables();
       for (final HDLVariable hvar : _variables) {
-        this.handleVariable(hvar, type, obj, res, resetValue, otherValue, pid);
+        boolean _isDead = scope.isDead(hvar);
+        boolean _not = (!_isDead);
+        if (_not) {
+          this.handleVariable(hvar, type, obj, res, resetValue, otherValue, pid);
+        }
       }
     }
     return this.attachComment(res, obj);
@@ -585,20 +623,7 @@ public class VHDLStatementExtension {
     int _size = hvar.getDimensions().size();
     boolean _notEquals = (_size != 0);
     if (_notEquals) {
-      final LinkedList<DiscreteRange<?>> ranges = new LinkedList<DiscreteRange<?>>();
-      ArrayList<HDLExpression> _dimensions = hvar.getDimensions();
-      for (final HDLExpression arrayWidth : _dimensions) {
-        {
-          final HDLExpression newWidth = HDLArithOp.subtract(arrayWidth, 1);
-          final Range range = this.vee.toVHDL(new HDLRange().setFrom(HDLLiteral.get(0)).setTo(newWidth).copyDeepFrozen(obj), Range.Direction.TO);
-          ranges.add(range);
-        }
-      }
-      final boolean external = obj.isExternal();
-      String _arrayRefName = VHDLStatementExtension.getArrayRefName(hvar, external);
-      final ConstrainedArray arrType = new ConstrainedArray(_arrayRefName, type, ((DiscreteRange[])Conversions.unwrapArray(ranges, DiscreteRange.class)));
-      res.addTypeDeclaration(arrType, external);
-      varType = arrType;
+      varType = VHDLCompilationScope.current().declareArrayType(hvar, type, VHDLStatementExtension.getArrayRanges(hvar, obj), obj.isExternal(), res);
     }
     String name = hvar.getName();
     String _meta = hvar.<String>getMeta(HDLInterfaceInstantiation.ORIG_NAME);
@@ -724,7 +749,7 @@ public class VHDLStatementExtension {
     final Optional<? extends HDLType> type = TypeExtension.typeOf(hCaseExp);
     if ((type.isPresent() && (type.get() instanceof HDLPrimitive))) {
       HDLType _get = type.get();
-      width = ConstantEvaluate.valueOf(((HDLPrimitive) _get).getWidth(), null);
+      width = VHDLCompilationScope.current().valueOf(((HDLPrimitive) _get).getWidth());
       boolean _isPresent = width.isPresent();
       boolean _not = (!_isPresent);
       if (_not) {
@@ -819,9 +844,13 @@ public class VHDLStatementExtension {
     SequentialStatement sa = null;
     HDLReference ref = obj.getLeft();
     final HDLVariable hvar = ((HDLResolvedRef) ref).resolveVarForced("VHDL");
+    boolean _isDead = VHDLCompilationScope.current().isDead(hvar);
+    if (_isDead) {
+      return context;
+    }
     final ArrayList<HDLExpression> dim = hvar.getDimensions();
     final Expression assTarget = this.vee.toVHDL(ref);
-    Expression<?> value = this.vee.toVHDL(obj.getRight());
+    Expression<?> value = null;
     if (((dim.size() != 0) && Objects.equal(ref.getClassType(), HDLClass.HDLVariableRef))) {
       final HDLVariableRef varRef = ((HDLVariableRef) ref);
       ArrayList<HDLExpression> _array = varRef.getArray();
@@ -838,22 +867,22 @@ public class VHDLStatementExtension {
           value = _typeConversion;
         } else {
           final HDLVariableDeclaration hvd = hvar.<HDLVariableDeclaration>getContainer(HDLVariableDeclaration.class);
-          String _arrayRefName = VHDLStatementExtension.getArrayRefName(hvar, hvd.isExternal());
-          UnresolvedType _unresolvedType_1 = new UnresolvedType(_arrayRefName);
+          String _arrayTypeName = VHDLCompilationScope.current().getArrayTypeName(hvar, hvd.isExternal());
+          UnresolvedType _unresolvedType_1 = new UnresolvedType(_arrayTypeName);
           Expression _vHDL_1 = this.vee.toVHDL(obj.getRight());
           TypeConversion _typeConversion_1 = new TypeConversion(_unresolvedType_1, _vHDL_1);
           value = _typeConversion_1;
         }
       }
     }
-    HDLAnnotation _annotation = hvar.getAnnotation(HDLBuiltInAnnotationProvider.HDLBuiltInAnnotations.memory);
-    boolean _tripleNotEquals = (_annotation != null);
-    if (_tripleNotEquals) {
-      VariableAssignment _variableAssignment = new VariableAssignment(((VariableAssignmentTarget) assTarget), value);
-      sa = _variableAssignment;
+    if ((((value == null) && (obj.getRight() instanceof HDLTernary)) && VHDLCompilationScope.current().getSettings().ternariesAsIf)) {
+      HDLExpression _right = obj.getRight();
+      sa = this.createConditionalAssignment(hvar, assTarget, ((HDLTernary) _right));
     } else {
-      SignalAssignment _signalAssignment = new SignalAssignment(((SignalAssignmentTarget) assTarget), value);
-      sa = _signalAssignment;
+      if ((value == null)) {
+        value = this.vee.toVHDL(obj.getRight());
+      }
+      sa = this.createAssignment(hvar, assTarget, value);
     }
     final HDLRegisterConfig config = hvar.getRegisterConfig();
     if ((config != null)) {
@@ -864,6 +893,43 @@ public class VHDLStatementExtension {
     return this.attachComment(context, obj);
   }
   
+  private SequentialStatement createAssignment(final HDLVariable hvar, final Expression<?> assTarget, final Expression<?> value) {
+    HDLAnnotation _annotation = hvar.getAnnotation(HDLBuiltInAnnotationProvider.HDLBuiltInAnnotations.memory);
+    boolean _tripleNotEquals = (_annotation != null);
+    if (_tripleNotEquals) {
+      return new VariableAssignment(((VariableAssignmentTarget) assTarget), value);
+    }
+    return new SignalAssignment(((SignalAssignmentTarget) assTarget), value);
+  }
+  
+  /**
+   * Assigns a ternary with an if statement instead of the ternaryOp function. Ternaries in the else
+   * branch become elsif parts, ternaries in the then branch nested if statements.
+   */
+  private SequentialStatement createConditionalAssignment(final HDLVariable hvar, final Expression<?> assTarget, final HDLTernary ternary) {
+    Expression _vHDL = this.vee.toVHDL(ternary.getIfExpr());
+    final IfStatement ifs = new IfStatement(_vHDL);
+    ifs.getStatements().add(this.createBranchAssignment(hvar, assTarget, ternary.getThenExpr()));
+    HDLExpression elseExpr = ternary.getElseExpr();
+    while ((elseExpr instanceof HDLTernary)) {
+      {
+        final HDLTernary elsif = ((HDLTernary) elseExpr);
+        final IfStatement.ElsifPart part = ifs.createElsifPart(this.vee.toVHDL(elsif.getIfExpr()));
+        part.getStatements().add(this.createBranchAssignment(hvar, assTarget, elsif.getThenExpr()));
+        elseExpr = elsif.getElseExpr();
+      }
+    }
+    ifs.getElseStatements().add(this.createBranchAssignment(hvar, assTarget, elseExpr));
+    return ifs;
+  }
+  
+  private SequentialStatement createBranchAssignment(final HDLVariable hvar, final Expression<?> assTarget, final HDLExpression exp) {
+    if ((exp instanceof HDLTernary)) {
+      return this.createConditionalAssignment(hvar, assTarget, ((HDLTernary)exp));
+    }
+    return this.createAssignment(hvar, assTarget, this.vee.toVHDL(exp));
+  }
+  
   protected VHDLContext _toVHDL(final HDLForLoop obj, final int pid) {
     final VHDLContext context = new VHDLContext();
     ArrayList<HDLStatement> _dos = obj.getDos();